@@ -0,0 +1,3 @@
+#!/bin/sh
+# Chạy một lần khi primary khởi tạo database: cho phép replica trong mạng compose kết nối replication.
+echo "host replication all all md5" >> "$PGDATA/pg_hba.conf"
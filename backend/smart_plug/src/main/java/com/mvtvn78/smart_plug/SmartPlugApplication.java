@@ -3,8 +3,10 @@ package com.mvtvn78.smart_plug;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.integration.config.EnableIntegration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 // Tich Hop MQTT
 @EnableIntegration
+@EnableScheduling
 @SpringBootApplication
 public class SmartPlugApplication {
 	public static void main(String[] args) {
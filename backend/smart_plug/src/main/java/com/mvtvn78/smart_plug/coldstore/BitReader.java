@@ -0,0 +1,35 @@
+package com.mvtvn78.smart_plug.coldstore;
+
+/**
+ * Đọc chuỗi bit do {@link BitWriter} ghi.
+ */
+final class BitReader {
+    private final byte[] buf;
+    private int pos;
+    private int bitPos;
+
+    BitReader(byte[] buf) {
+        this.buf = buf;
+    }
+
+    boolean readBit() {
+        return readBits(1) == 1;
+    }
+
+    long readBits(int n) {
+        long value = 0;
+        while (n > 0) {
+            int avail = 8 - bitPos;
+            int take = Math.min(avail, n);
+            int bits = ((buf[pos] & 0xff) >>> (avail - take)) & ((1 << take) - 1);
+            value = (value << take) | bits;
+            bitPos += take;
+            n -= take;
+            if (bitPos == 8) {
+                pos++;
+                bitPos = 0;
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,45 @@
+package com.mvtvn78.smart_plug.coldstore;
+
+import java.util.Arrays;
+
+/**
+ * Ghi chuỗi bit (MSB trước) vào mảng byte tự mở rộng.
+ */
+final class BitWriter {
+    private byte[] buf;
+    private int pos;
+    private int bitPos;
+
+    BitWriter(int initialCapacity) {
+        buf = new byte[Math.max(16, initialCapacity)];
+    }
+
+    void writeBit(boolean bit) {
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * Ghi {@code n} bit thấp của {@code value} (n <= 64)
+     */
+    void writeBits(long value, int n) {
+        while (n > 0) {
+            if (pos == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            int free = 8 - bitPos;
+            int take = Math.min(free, n);
+            int bits = (int) ((value >>> (n - take)) & ((1 << take) - 1));
+            buf[pos] |= (byte) (bits << (free - take));
+            bitPos += take;
+            n -= take;
+            if (bitPos == 8) {
+                pos++;
+                bitPos = 0;
+            }
+        }
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buf, bitPos == 0 ? pos : pos + 1);
+    }
+}
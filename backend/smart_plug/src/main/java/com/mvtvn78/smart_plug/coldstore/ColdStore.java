@@ -0,0 +1,250 @@
+package com.mvtvn78.smart_plug.coldstore;
+
+import com.mvtvn78.smart_plug.model.Telemetry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Stream;
+
+/**
+ * Kho lạnh cho telemetry cũ: mỗi device mỗi ngày một file block nén
+ * ({@code <dir>/<deviceId>/<yyyy-MM-dd>.tcb}, xem {@link TelemetryBlockCodec}).
+ * Danh sách ngày có block của từng device được giữ trong bộ nhớ: quét thư mục một lần khi khởi động,
+ * sau đó cập nhật khi {@link ColdStoreMover} ghi block hoặc xoá theo retention, nên việc đọc trang
+ * không liệt kê thư mục và device không có dữ liệu lạnh không chạm tới đĩa.
+ */
+@Slf4j
+@Component
+public class ColdStore {
+    public static final Comparator<Telemetry> ORDER =
+            Comparator.comparing(Telemetry::getTimestamp).thenComparing(Telemetry::getId);
+    private static final String SUFFIX = ".tcb";
+
+    @Value("${telemetry.cold.dir:./data/cold}")
+    private String dir;
+
+    /**
+     * deviceId -> các ngày có block, tăng dần
+     */
+    private final Map<Long, NavigableSet<LocalDate>> index = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void loadIndex() {
+        Path root = Paths.get(dir);
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        int blocks = 0;
+        try (Stream<Path> deviceDirs = Files.list(root)) {
+            for (Path deviceDir : deviceDirs.filter(Files::isDirectory).toList()) {
+                long deviceId;
+                try {
+                    deviceId = Long.parseLong(deviceDir.getFileName().toString());
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                try (Stream<Path> files = Files.list(deviceDir)) {
+                    for (Path file : files.toList()) {
+                        LocalDate day = dayOf(file);
+                        if (day != null) {
+                            daysOf(deviceId).add(day);
+                            blocks++;
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.info("Indexed {} cold telemetry blocks of {} devices", blocks, index.size());
+    }
+
+    /**
+     * Ghi (hoặc gộp thêm vào) block của device trong ngày. Gộp theo id nên ghi lại nhiều lần vẫn an toàn.
+     */
+    public void write(long deviceId, LocalDate day, List<Telemetry> rows) throws IOException {
+        Path path = path(deviceId, day);
+        Map<Long, Telemetry> merged = new LinkedHashMap<>();
+        if (Files.exists(path)) {
+            for (Telemetry t : read(deviceId, day)) {
+                merged.put(t.getId(), t);
+            }
+        }
+        for (Telemetry t : rows) {
+            merged.put(t.getId(), t);
+        }
+        List<Telemetry> sorted = new ArrayList<>(merged.values());
+        sorted.sort(ORDER);
+        byte[] block = TelemetryBlockCodec.encode(deviceId, sorted);
+
+        Files.createDirectories(path.getParent());
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.wrap(block);
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        daysOf(deviceId).add(day);
+    }
+
+    public List<Telemetry> read(long deviceId, LocalDate day) {
+        try {
+            return TelemetryBlockCodec.decode(Files.readAllBytes(path(deviceId, day)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Các ngày có block của device trong [from, to], tăng dần (đọc từ bộ nhớ, không liệt kê thư mục)
+     */
+    public List<LocalDate> days(long deviceId, LocalDate from, LocalDate to) {
+        NavigableSet<LocalDate> days = index.get(deviceId);
+        if (days == null || from.isAfter(to)) {
+            return List.of();
+        }
+        return new ArrayList<>(days.subSet(from, true, to, true));
+    }
+
+    /**
+     * true nếu device có block trong [from, to]
+     */
+    public boolean hasDays(long deviceId, LocalDate from, LocalDate to) {
+        NavigableSet<LocalDate> days = index.get(deviceId);
+        if (days == null || from.isAfter(to)) {
+            return false;
+        }
+        LocalDate first = days.ceiling(from);
+        return first != null && !first.isAfter(to);
+    }
+
+    /**
+     * Tối đa {@code limit} dòng sau (afterTs, afterId) và trước {@code to}, theo thứ tự (timestamp, id).
+     */
+    public List<Telemetry> readPage(long deviceId, LocalDateTime afterTs, long afterId, LocalDateTime to, int limit) {
+        List<Telemetry> page = new ArrayList<>();
+        for (LocalDate day : days(deviceId, afterTs.toLocalDate(), to.toLocalDate())) {
+            for (Telemetry t : read(deviceId, day)) {
+                LocalDateTime ts = t.getTimestamp();
+                if (!ts.isBefore(to)) {
+                    return page;
+                }
+                if (ts.isAfter(afterTs) || (ts.isEqual(afterTs) && t.getId() > afterId)) {
+                    page.add(t);
+                    if (page.size() == limit) {
+                        return page;
+                    }
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Tối đa {@code limit} dòng trước (beforeTs, beforeId) và từ {@code from} trở đi, mới nhất trước.
+     */
+    public List<Telemetry> readPageDesc(long deviceId, LocalDateTime beforeTs, long beforeId, LocalDateTime from, int limit) {
+        List<Telemetry> page = new ArrayList<>();
+        List<LocalDate> days = days(deviceId, from.toLocalDate(), beforeTs.toLocalDate());
+        for (int d = days.size() - 1; d >= 0; d--) {
+            List<Telemetry> rows = read(deviceId, days.get(d));
+            for (int i = rows.size() - 1; i >= 0; i--) {
+                Telemetry t = rows.get(i);
+                LocalDateTime ts = t.getTimestamp();
+                if (ts.isBefore(from)) {
+                    return page;
+                }
+                if (ts.isBefore(beforeTs) || (ts.isEqual(beforeTs) && t.getId() < beforeId)) {
+                    page.add(t);
+                    if (page.size() == limit) {
+                        return page;
+                    }
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Xoá các block của ngày trước {@code cutoff} (retention), trả về số file đã xoá
+     */
+    public int deleteBefore(LocalDate cutoff) {
+        Path root = Paths.get(dir);
+        if (!Files.isDirectory(root)) {
+            return 0;
+        }
+        int deleted = 0;
+        try (Stream<Path> deviceDirs = Files.list(root)) {
+            for (Path deviceDir : deviceDirs.filter(Files::isDirectory).toList()) {
+                try (Stream<Path> files = Files.list(deviceDir)) {
+                    for (Path file : files.toList()) {
+                        LocalDate day = dayOf(file);
+                        if (day != null && day.isBefore(cutoff)) {
+                            Files.delete(file);
+                            deleted++;
+                        }
+                    }
+                }
+                unindexBefore(deviceDir, cutoff);
+                try (Stream<Path> left = Files.list(deviceDir)) {
+                    if (left.findAny().isEmpty()) {
+                        Files.delete(deviceDir);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return deleted;
+    }
+
+    private void unindexBefore(Path deviceDir, LocalDate cutoff) {
+        try {
+            long deviceId = Long.parseLong(deviceDir.getFileName().toString());
+            index.computeIfPresent(deviceId, (k, days) -> {
+                days.headSet(cutoff).clear();
+                return days.isEmpty() ? null : days;
+            });
+        } catch (NumberFormatException ignored) {
+            // không phải thư mục của device
+        }
+    }
+
+    private NavigableSet<LocalDate> daysOf(long deviceId) {
+        return index.computeIfAbsent(deviceId, k -> new ConcurrentSkipListSet<>());
+    }
+
+    private static LocalDate dayOf(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(SUFFIX) ? LocalDate.parse(name.substring(0, name.length() - SUFFIX.length())) : null;
+    }
+
+    private Path path(long deviceId, LocalDate day) {
+        return Paths.get(dir, Long.toString(deviceId), day + SUFFIX);
+    }
+}
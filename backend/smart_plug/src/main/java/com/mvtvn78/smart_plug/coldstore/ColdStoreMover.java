@@ -0,0 +1,103 @@
+package com.mvtvn78.smart_plug.coldstore;
+
+import com.mvtvn78.smart_plug.ingest.TelemetryPartitionManager;
+import com.mvtvn78.smart_plug.model.Telemetry;
+import com.mvtvn78.smart_plug.repository.TelemetryRowMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Định kỳ chuyển telemetry cũ hơn {@code telemetry.cold.after-days} ngày từ database sang {@link ColdStore}
+ * (0 = tắt) theo cả partition: partition mà toàn bộ khoảng thời gian đã quá hạn được ghi ra block
+ * từng (device, ngày) rồi detach và drop, không dùng {@code DELETE} nên không để lại dòng chết cho vacuum.
+ * File trong kho lạnh cũng theo {@code telemetry.retention.months} như các partition.
+ */
+@Slf4j
+@Component
+public class ColdStoreMover {
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ColdStore coldStore;
+    private final TelemetryPartitionManager partitionManager;
+    @Value("${telemetry.cold.after-days:0}")
+    private int afterDays;
+    @Value("${telemetry.retention.months:0}")
+    private int retentionMonths;
+
+    public ColdStoreMover(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                          ColdStore coldStore, TelemetryPartitionManager partitionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.coldStore = coldStore;
+        this.partitionManager = partitionManager;
+    }
+
+    @Scheduled(cron = "${telemetry.cold.cron:0 0 2 * * *}")
+    public void run() {
+        if (retentionMonths > 0) {
+            // cùng mốc với retention của partition: đầu tháng hiện tại lùi N tháng
+            LocalDate cutoff = LocalDate.now().withDayOfMonth(1).minusMonths(retentionMonths);
+            int deleted = coldStore.deleteBefore(cutoff);
+            if (deleted > 0) {
+                log.info("Deleted {} cold telemetry blocks older than {} (retention {} months)", deleted, cutoff, retentionMonths);
+            }
+        }
+        if (afterDays <= 0) {
+            return;
+        }
+        LocalDate cutoff = LocalDate.now().minusDays(afterDays);
+        for (String partition : partitionManager.partitionsEndingBy(cutoff)) {
+            try {
+                long moved = movePartition(partition);
+                log.info("Moved {} telemetry rows of partition {} to cold storage", moved, partition);
+            } catch (Exception e) {
+                // dừng lại, lần chạy sau làm lại partition này (ghi block gộp theo id nên an toàn)
+                log.error("Moving telemetry partition {} to cold storage failed: {}", partition, e.toString());
+                break;
+            }
+        }
+    }
+
+    private long movePartition(String partition) throws Exception {
+        List<DeviceDay> deviceDays = jdbcTemplate.query(
+                "select device_id, cast(timestamp as date) as day from " + partition + " group by 1, 2 order by 2, 1",
+                (rs, i) -> new DeviceDay(rs.getLong(1), rs.getDate(2).toLocalDate()));
+        String selectSql = "select " + TelemetryRowMapper.COLUMNS + " from " + partition
+                + " where device_id = ? and timestamp >= ? and timestamp < ? order by timestamp, id";
+        long moved = 0;
+        long maxId = 0;
+        for (DeviceDay dd : deviceDays) {
+            List<Telemetry> rows = jdbcTemplate.query(selectSql, new TelemetryRowMapper(), dd.deviceId(),
+                    Timestamp.valueOf(dd.day().atStartOfDay()), Timestamp.valueOf(dd.day().plusDays(1).atStartOfDay()));
+            coldStore.write(dd.deviceId(), dd.day(), rows);
+            for (Telemetry t : rows) {
+                maxId = Math.max(maxId, t.getId());
+            }
+            moved += rows.size();
+        }
+        long copiedMaxId = maxId;
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("alter table telemetry detach partition " + partition);
+            // dòng đến muộn sau khi đã chép (id lấy từ sequence nên luôn lớn hơn): rollback, lần sau chép lại
+            Boolean late = jdbcTemplate.queryForObject(
+                    "select exists(select 1 from " + partition + " where id > ?)", Boolean.class, copiedMaxId);
+            if (Boolean.TRUE.equals(late)) {
+                throw new IllegalStateException("rows arrived in " + partition + " while moving");
+            }
+            jdbcTemplate.execute("drop table " + partition);
+        });
+        return moved;
+    }
+
+    private record DeviceDay(long deviceId, LocalDate day) {
+    }
+}
@@ -0,0 +1,350 @@
+package com.mvtvn78.smart_plug.coldstore;
+
+import com.mvtvn78.smart_plug.model.Telemetry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Nén telemetry của một device trong một ngày thành một block theo cột.
+ * <ul>
+ *     <li>timestamp, id, deviceTs: delta-of-delta (kiểu Gorilla), mẫu đều 5s gần như chỉ tốn 1 bit.</li>
+ *     <li>power: XOR với giá trị trước, chỉ ghi các bit có nghĩa.</li>
+ *     <li>relayState: 1 bit.</li>
+ *     <li>Dòng không đúng định dạng firmware (payload gốc) ghi riêng ở cuối block.</li>
+ * </ul>
+ * Layout: [magic][version][count][deviceId][tsScale][bitsLength][bits][raw rows][crc32].
+ */
+public final class TelemetryBlockCodec {
+    private static final int MAGIC = 0x54434231; // "TCB1"
+    private static final byte VERSION = 1;
+
+    private static final int RAW_PAYLOAD = 1;
+    private static final int RAW_RELAY = 2;
+    private static final int RAW_RELAY_ON = 4;
+    private static final int RAW_POWER = 8;
+    private static final int RAW_DEVICE_TS = 16;
+
+    private TelemetryBlockCodec() {
+    }
+
+    /**
+     * @param rows đã sắp xếp theo (timestamp, id)
+     */
+    public static byte[] encode(long deviceId, List<Telemetry> rows) {
+        int count = rows.size();
+        long[] micros = new long[count];
+        boolean millis = true;
+        for (int i = 0; i < count; i++) {
+            micros[i] = toMicros(rows.get(i).getTimestamp());
+            millis &= micros[i] % 1000 == 0;
+        }
+        // dữ liệu mới chỉ có độ chính xác ms, bỏ 3 chữ số cuối để delta nhỏ hơn
+        int tsScale = millis ? 1000 : 1;
+
+        BitWriter bits = new BitWriter(count * 2 + 16);
+        DeltaOfDelta ts = new DeltaOfDelta();
+        for (long m : micros) {
+            ts.write(bits, m / tsScale);
+        }
+        DeltaOfDelta ids = new DeltaOfDelta();
+        for (Telemetry t : rows) {
+            ids.write(bits, t.getId());
+        }
+        for (Telemetry t : rows) {
+            bits.writeBit(isTyped(t));
+        }
+        for (Telemetry t : rows) {
+            if (isTyped(t)) {
+                bits.writeBit(t.getRelayState());
+            }
+        }
+        Xor32 power = new Xor32();
+        for (Telemetry t : rows) {
+            if (isTyped(t)) {
+                power.write(bits, t.getPower());
+            }
+        }
+        DeltaOfDelta deviceTs = new DeltaOfDelta();
+        for (Telemetry t : rows) {
+            if (isTyped(t)) {
+                deviceTs.write(bits, t.getDeviceTs());
+            }
+        }
+        byte[] bitBytes = bits.toByteArray();
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(bitBytes.length + 64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(count);
+            out.writeLong(deviceId);
+            out.writeShort(tsScale);
+            out.writeInt(bitBytes.length);
+            out.write(bitBytes);
+            for (Telemetry t : rows) {
+                if (!isTyped(t)) {
+                    writeRaw(out, t);
+                }
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException khi block hỏng
+     */
+    public static List<Telemetry> decode(byte[] block) {
+        if (block.length < 4) {
+            throw new IllegalArgumentException("Telemetry block too short");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(block, 0, block.length - 4);
+        ByteBuffer buf = ByteBuffer.wrap(block);
+        if ((int) crc.getValue() != buf.getInt(block.length - 4)) {
+            throw new IllegalArgumentException("Telemetry block checksum mismatch");
+        }
+        if (buf.getInt() != MAGIC || buf.get() != VERSION) {
+            throw new IllegalArgumentException("Unknown telemetry block format");
+        }
+        int count = buf.getInt();
+        long deviceId = buf.getLong();
+        int tsScale = buf.getShort();
+        byte[] bitBytes = new byte[buf.getInt()];
+        buf.get(bitBytes);
+
+        List<Telemetry> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Telemetry t = new Telemetry();
+            t.setDeviceId(deviceId);
+            rows.add(t);
+        }
+        BitReader bits = new BitReader(bitBytes);
+        DeltaOfDelta ts = new DeltaOfDelta();
+        for (Telemetry t : rows) {
+            t.setTimestamp(fromMicros(ts.read(bits) * tsScale));
+        }
+        DeltaOfDelta ids = new DeltaOfDelta();
+        for (Telemetry t : rows) {
+            t.setId(ids.read(bits));
+        }
+        boolean[] typed = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            typed[i] = bits.readBit();
+        }
+        for (int i = 0; i < count; i++) {
+            if (typed[i]) {
+                rows.get(i).setRelayState(bits.readBit());
+            }
+        }
+        Xor32 power = new Xor32();
+        for (int i = 0; i < count; i++) {
+            if (typed[i]) {
+                rows.get(i).setPower(power.read(bits));
+            }
+        }
+        DeltaOfDelta deviceTs = new DeltaOfDelta();
+        for (int i = 0; i < count; i++) {
+            if (typed[i]) {
+                rows.get(i).setDeviceTs(deviceTs.read(bits));
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (!typed[i]) {
+                readRaw(buf, rows.get(i));
+            }
+        }
+        return rows;
+    }
+
+    private static boolean isTyped(Telemetry t) {
+        return t.getRawPayload() == null && t.getRelayState() != null && t.getPower() != null && t.getDeviceTs() != null;
+    }
+
+    private static void writeRaw(DataOutputStream out, Telemetry t) throws IOException {
+        int flags = 0;
+        if (t.getRawPayload() != null) flags |= RAW_PAYLOAD;
+        if (t.getRelayState() != null) flags |= RAW_RELAY | (t.getRelayState() ? RAW_RELAY_ON : 0);
+        if (t.getPower() != null) flags |= RAW_POWER;
+        if (t.getDeviceTs() != null) flags |= RAW_DEVICE_TS;
+        out.writeByte(flags);
+        if (t.getRawPayload() != null) {
+            byte[] payload = t.getRawPayload().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(payload.length);
+            out.write(payload);
+        }
+        if (t.getPower() != null) {
+            out.writeInt(t.getPower());
+        }
+        if (t.getDeviceTs() != null) {
+            out.writeLong(t.getDeviceTs());
+        }
+    }
+
+    private static void readRaw(ByteBuffer buf, Telemetry t) {
+        int flags = buf.get();
+        if ((flags & RAW_PAYLOAD) != 0) {
+            byte[] payload = new byte[buf.getInt()];
+            buf.get(payload);
+            t.setPayload(new String(payload, StandardCharsets.UTF_8));
+        }
+        if ((flags & RAW_RELAY) != 0) {
+            t.setRelayState((flags & RAW_RELAY_ON) != 0);
+        }
+        if ((flags & RAW_POWER) != 0) {
+            t.setPower(buf.getInt());
+        }
+        if ((flags & RAW_DEVICE_TS) != 0) {
+            t.setDeviceTs(buf.getLong());
+        }
+    }
+
+    /**
+     * LocalDateTime -> micro giây, quy đổi như UTC để không lệch do múi giờ/DST
+     */
+    private static long toMicros(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + time.getNano() / 1000;
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1000, ZoneOffset.UTC);
+    }
+
+    /**
+     * Delta-of-delta, mã hoá zigzag theo nhóm độ dài: 0 | 10+7 bit | 110+12 bit | 1110+20 bit | 1111+64 bit.
+     */
+    private static final class DeltaOfDelta {
+        private boolean first = true;
+        private long prev;
+        private long prevDelta;
+
+        void write(BitWriter w, long value) {
+            if (first) {
+                w.writeBits(value, 64);
+                first = false;
+            } else {
+                long delta = value - prev;
+                long dod = delta - prevDelta;
+                long zz = (dod << 1) ^ (dod >> 63);
+                if (zz == 0) {
+                    w.writeBits(0b0, 1);
+                } else if (Long.compareUnsigned(zz, 1L << 7) < 0) {
+                    w.writeBits(0b10, 2);
+                    w.writeBits(zz, 7);
+                } else if (Long.compareUnsigned(zz, 1L << 12) < 0) {
+                    w.writeBits(0b110, 3);
+                    w.writeBits(zz, 12);
+                } else if (Long.compareUnsigned(zz, 1L << 20) < 0) {
+                    w.writeBits(0b1110, 4);
+                    w.writeBits(zz, 20);
+                } else {
+                    w.writeBits(0b1111, 4);
+                    w.writeBits(zz, 64);
+                }
+                prevDelta = delta;
+            }
+            prev = value;
+        }
+
+        long read(BitReader r) {
+            if (first) {
+                first = false;
+                prev = r.readBits(64);
+                return prev;
+            }
+            long zz;
+            if (!r.readBit()) {
+                zz = 0;
+            } else if (!r.readBit()) {
+                zz = r.readBits(7);
+            } else if (!r.readBit()) {
+                zz = r.readBits(12);
+            } else if (!r.readBit()) {
+                zz = r.readBits(20);
+            } else {
+                zz = r.readBits(64);
+            }
+            long dod = (zz >>> 1) ^ -(zz & 1);
+            prevDelta += dod;
+            prev += prevDelta;
+            return prev;
+        }
+    }
+
+    /**
+     * XOR với giá trị trước: 0 nếu bằng nhau; 10 + bit có nghĩa nếu nằm trong cửa sổ trước;
+     * 11 + 5 bit leading zeros + 5 bit (độ dài - 1) + bit có nghĩa.
+     */
+    private static final class Xor32 {
+        private boolean first = true;
+        private int prev;
+        private int leading = -1;
+        private int trailing;
+
+        void write(BitWriter w, int value) {
+            if (first) {
+                w.writeBits(value & 0xffffffffL, 32);
+                first = false;
+                prev = value;
+                return;
+            }
+            int x = value ^ prev;
+            prev = value;
+            if (x == 0) {
+                w.writeBit(false);
+                return;
+            }
+            w.writeBit(true);
+            int lead = Integer.numberOfLeadingZeros(x);
+            int trail = Integer.numberOfTrailingZeros(x);
+            if (leading >= 0 && lead >= leading && trail >= trailing) {
+                w.writeBit(false);
+                w.writeBits((x >>> trailing) & 0xffffffffL, 32 - leading - trailing);
+            } else {
+                w.writeBit(true);
+                int length = 32 - lead - trail;
+                w.writeBits(lead, 5);
+                w.writeBits(length - 1, 5);
+                w.writeBits((x >>> trail) & 0xffffffffL, length);
+                leading = lead;
+                trailing = trail;
+            }
+        }
+
+        int read(BitReader r) {
+            if (first) {
+                first = false;
+                prev = (int) r.readBits(32);
+                return prev;
+            }
+            if (!r.readBit()) {
+                return prev;
+            }
+            if (r.readBit()) {
+                leading = (int) r.readBits(5);
+                int length = (int) r.readBits(5) + 1;
+                trailing = 32 - leading - length;
+            }
+            int x = (int) (r.readBits(32 - leading - trailing) << trailing);
+            prev ^= x;
+            return prev;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.mvtvn78.smart_plug.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.autoconfigure.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+
+/**
+ * Chỉ dùng khi cấu hình datasource.replica.url, nếu không Spring Boot tự tạo pool primary như bình thường.
+ * Pool primary được tạo từ spring.datasource.* và spring.datasource.hikari.* như pool mặc định của Boot,
+ * pool read replica chép cấu hình của primary rồi đổi url/tài khoản/kích thước. Transaction read-only
+ * (@Transactional(readOnly = true)) đi sang replica để truy vấn lịch sử nặng không chiếm kết nối mà ingest cần;
+ * ghi và mọi truy vấn ngoài transaction read-only vẫn đi primary.
+ */
+@Configuration
+@ConditionalOnProperty(name = "datasource.replica.url")
+public class DataSourceConfig {
+    @Value("${datasource.replica.url}")
+    private String replicaUrl;
+    @Value("${datasource.replica.username:${spring.datasource.username:}}")
+    private String replicaUsername;
+    @Value("${datasource.replica.password:${spring.datasource.password:}}")
+    private String replicaPassword;
+    @Value("${datasource.replica.maximum-pool-size:10}")
+    private int replicaPoolSize;
+    /**
+     * Trễ replay vượt ngưỡng này thì đọc từ primary cho đến khi replica bắt kịp
+     */
+    @Value("${datasource.replica.max-lag-ms:5000}")
+    private long maxLagMs;
+    /**
+     * Thời gian tối đa cho một lần đo trễ (lấy kết nối + truy vấn), để replica chết không giữ thread scheduler
+     */
+    @Value("${datasource.replica.check-timeout-ms:1000}")
+    private long checkTimeoutMs;
+
+    private ReplicaRoutingDataSource routing;
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryPool(DataSourceProperties properties) {
+        HikariDataSource pool = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        // hikaricp.connections.* theo tên pool, để thấy pool nào đang bị chiếm (ghi đè được bằng pool-name)
+        pool.setPoolName("primary");
+        return pool;
+    }
+
+    @Bean
+    public HikariDataSource replicaPool(@Qualifier("primaryPool") HikariDataSource primaryPool) {
+        HikariDataSource pool = new HikariDataSource();
+        primaryPool.copyStateTo(pool);
+        pool.setPoolName("replica");
+        pool.setJdbcUrl(replicaUrl);
+        pool.setUsername(replicaUsername);
+        pool.setPassword(replicaPassword);
+        pool.setMaximumPoolSize(replicaPoolSize);
+        pool.setReadOnly(true);
+        return pool;
+    }
+
+    /**
+     * Pool một kết nối chỉ để đo trễ: timeout ngắn (Hikari, connect và socket của driver) thay vì
+     * connectionTimeout 30s của pool đọc, để lần đo không chặn các job @Scheduled khác khi replica chết.
+     */
+    @Bean
+    public HikariDataSource replicaCheckPool(@Qualifier("replicaPool") HikariDataSource replicaPool) {
+        HikariDataSource pool = new HikariDataSource();
+        replicaPool.copyStateTo(pool);
+        pool.setPoolName("replica-check");
+        pool.setMaximumPoolSize(1);
+        pool.setMinimumIdle(0);
+        pool.setConnectionTimeout(checkTimeoutMs);
+        pool.setValidationTimeout(checkTimeoutMs);
+        String seconds = String.valueOf(ReplicaRoutingDataSource.toSeconds(checkTimeoutMs));
+        pool.addDataSourceProperty("connectTimeout", seconds);
+        pool.addDataSourceProperty("socketTimeout", seconds);
+        return pool;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryPool") HikariDataSource primaryPool,
+                                 @Qualifier("replicaPool") HikariDataSource replicaPool,
+                                 @Qualifier("replicaCheckPool") HikariDataSource replicaCheckPool, MeterRegistry meterRegistry) {
+        routing = new ReplicaRoutingDataSource(primaryPool, replicaPool, replicaCheckPool, maxLagMs, checkTimeoutMs);
+        routing.checkLag();
+        Gauge.builder("datasource.replica.lag", routing, ReplicaRoutingDataSource::getLagMs)
+                .baseUnit("milliseconds").description("Replica replay lag, -1 when unreachable").register(meterRegistry);
+        Gauge.builder("datasource.replica.usable", routing, r -> r.isReplicaUsable() ? 1 : 0)
+                .description("1 when read-only transactions are routed to the replica").register(meterRegistry);
+        // lấy kết nối thật khi câu lệnh đầu tiên chạy, lúc đó cờ read-only của transaction đã có
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    @Scheduled(fixedDelayString = "${datasource.replica.check-interval-ms:1000}")
+    public void checkReplicaLag() {
+        if (routing != null) {
+            routing.checkLag();
+        }
+    }
+}
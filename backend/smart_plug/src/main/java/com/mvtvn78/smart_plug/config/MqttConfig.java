@@ -1,10 +1,9 @@
 package com.mvtvn78.smart_plug.config;
 
-import com.mvtvn78.smart_plug.model.Device;
-import com.mvtvn78.smart_plug.model.Telemetry;
+import com.mvtvn78.smart_plug.ingest.MqttInboundPool;
+import com.mvtvn78.smart_plug.ingest.MqttSubscriptions;
+import com.mvtvn78.smart_plug.ingest.TelemetryIngestService;
 import com.mvtvn78.smart_plug.repository.DeviceRepository;
-import com.mvtvn78.smart_plug.repository.TelemetryRepository;
-import com.mvtvn78.smart_plug.ws.SessionManager;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -15,10 +14,15 @@ import org.springframework.integration.channel.DirectChannel;
 import org.springframework.integration.mqtt.core.DefaultMqttPahoClientFactory;
 import org.springframework.integration.mqtt.core.MqttPahoClientFactory;
 import org.springframework.integration.mqtt.inbound.MqttPahoMessageDrivenChannelAdapter;
-import org.springframework.integration.mqtt.outbound.MqttPahoMessageHandler;
 import org.springframework.integration.mqtt.support.DefaultPahoMessageConverter;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.MessageHandler;
+import org.springframework.util.StringUtils;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
 
 @Configuration
 public class MqttConfig {
@@ -30,10 +34,31 @@ public class MqttConfig {
     private String userName;
     @Value("${mqtt.client.password:spring-boot-client}")
     private String password;
-    @Autowired
-    private TelemetryRepository telemetryRepository;
-    @Autowired
-    private SessionManager sessionManager;
+    /**
+     * Bật chế độ shared subscription khi có giá trị (nhiều instance backend cùng nhận telemetry)
+     */
+    @Value("${mqtt.inbound.shared-group:}")
+    private String sharedGroup;
+    /**
+     * Định danh instance, mặc định là hostname
+     */
+    @Value("${mqtt.instance-id:}")
+    private String instanceId;
+    /**
+     * Wildcard theo quy ước topic của firmware (/data/<device_name>); để trống để subscribe từng device
+     */
+    @Value("${mqtt.inbound.topic-filter:/data/+}")
+    private String topicFilter;
+    /**
+     * Số kết nối MQTT inbound song song
+     */
+    @Value("${mqtt.inbound.connections:1}")
+    private int inboundConnections;
+    /**
+     * Số topic tối đa trong một gói SUBSCRIBE khi subscribe từng device
+     */
+    @Value("${mqtt.inbound.subscribe-batch-size:500}")
+    private int subscribeBatchSize;
     @Bean
     public MqttPahoClientFactory mqttClientFactory() {
         DefaultMqttPahoClientFactory factory = new DefaultMqttPahoClientFactory();
@@ -53,58 +78,64 @@ public class MqttConfig {
         return new DirectChannel();
     }
     @Bean
-    public MqttPahoMessageDrivenChannelAdapter inbound(DeviceRepository deviceRepository) {
-        // Không thêm topic tại đây
-        MqttPahoMessageDrivenChannelAdapter adapter = new MqttPahoMessageDrivenChannelAdapter(clientId + "_in",
-                mqttClientFactory());
-
-        adapter.setCompletionTimeout(5000);
-        adapter.setConverter(new DefaultPahoMessageConverter());
-        adapter.setQos(1);
-        adapter.setOutputChannel(mqttInputChannel());
-        // LOAD TẤT CẢ TOPIC TỪ DB
-        deviceRepository.findAll().forEach(d -> {
-            adapter.addTopic(d.getTopicData(), 1);
-            System.out.println("Subscribed to: " + d.getTopicData());
-        });
-        return adapter;
+    public MqttSubscriptions mqttSubscriptions() {
+        MqttSubscriptions subscriptions = new MqttSubscriptions(sharedGroup, topicFilter);
+        subscriptions.setSubscribeBatchSize(subscribeBatchSize);
+        return subscriptions;
+    }
+    @Bean
+    public MqttInboundPool inbound(DeviceRepository deviceRepository, MqttSubscriptions mqttSubscriptions) {
+        // Shared subscription: mỗi instance cần client id riêng
+        String inboundClientId = mqttSubscriptions.isShared()
+                ? clientId + "_in_" + resolveInstanceId()
+                : clientId + "_in";
+        int connections = Math.max(1, inboundConnections);
+        List<MqttPahoMessageDrivenChannelAdapter> adapters = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            MqttPahoMessageDrivenChannelAdapter adapter = new MqttPahoMessageDrivenChannelAdapter(
+                    connections == 1 ? inboundClientId : inboundClientId + "_" + i,
+                    mqttClientFactory());
+            adapter.setCompletionTimeout(5000);
+            DefaultPahoMessageConverter converter = new DefaultPahoMessageConverter();
+            // nhận payload dạng byte[] để parse trực tiếp, không tạo String
+            converter.setPayloadAsBytes(true);
+            adapter.setConverter(converter);
+            adapter.setQos(MqttSubscriptions.QOS);
+            adapter.setOutputChannel(mqttInputChannel());
+            mqttSubscriptions.register(adapter);
+            adapters.add(adapter);
+        }
+        MqttInboundPool pool = new MqttInboundPool(adapters);
+        if (mqttSubscriptions.hasTopicFilter() && !mqttSubscriptions.isSharded()) {
+            // Một wildcard cho mọi device, chỉ thêm các topic không theo quy ước firmware
+            mqttSubscriptions.subscribeTopicFilter();
+            deviceRepository.findTopicDataNotMatching(MqttSubscriptions.toRegex(topicFilter))
+                    .forEach(mqttSubscriptions::subscribe);
+        } else {
+            // LOAD TẤT CẢ TOPIC TỪ DB, chia cho các kết nối theo hash của topic;
+            // subscribe sau khi kết nối để mỗi lô là một gói SUBSCRIBE riêng
+            pool.setOnStarted(() -> mqttSubscriptions.subscribeAll(deviceRepository.findAllTopicData()));
+        }
+        return pool;
+    }
+    private String resolveInstanceId() {
+        if (StringUtils.hasText(instanceId)) {
+            return instanceId;
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return UUID.randomUUID().toString().substring(0, 8);
+        }
     }
     @Bean
     @ServiceActivator(inputChannel = "mqttInputChannel")
-    public MessageHandler handler(@Autowired DeviceRepository deviceRepository) {
+    public MessageHandler handler(@Autowired TelemetryIngestService telemetryIngestService) {
+        // Chạy trên thread nhận của Paho: chỉ định tuyến rồi chuyển sang partition của device
         return message -> {
             String topic = message.getHeaders().get("mqtt_receivedTopic").toString();
-            String payload = message.getPayload().toString();
-            System.out.println("Received MQTT message on topic " + topic + ": " + payload);
-            // Lấy device theo topic thực tế
-            Device device = deviceRepository.findByTopicData(topic);
-            if (device != null) {
-                try{
-                    sessionManager.sendToDevice(device.getId().toString(),payload);
-                }
-                catch (Exception e){
-                    e.printStackTrace();
-                }
-                Telemetry telemetry = new Telemetry();
-                telemetry.setPayload(payload);
-                telemetry.setDeviceId(device.getId());
-                telemetryRepository.save(telemetry);
-                System.out.println("Saved telemetry for deviceId = " + device.getId());
-            } else {
-                System.out.println("⚠ Không tìm thấy device với topic: " + topic);
-            }
+            byte[] payload = (byte[]) message.getPayload();
+            telemetryIngestService.onMessage(topic, payload);
         };
     }
-    @Bean
-    @ServiceActivator(inputChannel = "mqttOutboundChannel")
-    public MessageHandler mqttOutbound() {
-        MqttPahoMessageHandler messageHandler = new MqttPahoMessageHandler(clientId + "_out", mqttClientFactory());
-        messageHandler.setAsync(true);
-        messageHandler.setDefaultTopic("/test/topic");
-        return messageHandler;
-    }
-    @Bean
-    public MessageChannel mqttOutboundChannel() {
-        return new DirectChannel();
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,106 @@
+package com.mvtvn78.smart_plug.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Map;
+
+/**
+ * Chuyển transaction read-only sang pool read replica, còn lại dùng primary.
+ * Replica chỉ được dùng khi lần kiểm tra độ trễ gần nhất thành công và không vượt ngưỡng.
+ * Phải được bọc bởi LazyConnectionDataSourceProxy để việc chọn pool diễn ra sau khi transaction đã đặt cờ read-only.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+    enum Target { PRIMARY, REPLICA }
+
+    /**
+     * Độ trễ replay tính bằng giây; bằng 0 khi replica đã replay hết WAL đã nhận
+     * (tránh báo trễ giả khi primary không có ghi mới)
+     */
+    private static final String LAG_SQL = """
+        select case
+            when not pg_is_in_recovery() then 0
+            when pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0
+            else coalesce(extract(epoch from now() - pg_last_xact_replay_timestamp()), 0)
+        end
+        """;
+
+    private final DataSource lagCheck;
+    private final long maxLagMs;
+    private final int checkTimeoutSeconds;
+    private volatile boolean replicaUsable;
+    private volatile long lagMs = -1;
+
+    /**
+     * @param lagCheck kết nối tới cùng replica dùng riêng cho {@link #checkLag} (timeout ngắn)
+     */
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, DataSource lagCheck,
+                                    long maxLagMs, long checkTimeoutMs) {
+        this.lagCheck = lagCheck;
+        this.maxLagMs = maxLagMs;
+        this.checkTimeoutSeconds = toSeconds(checkTimeoutMs);
+        setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (replicaUsable && TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return Target.REPLICA;
+        }
+        return Target.PRIMARY;
+    }
+
+    /**
+     * Đo độ trễ của replica, gọi định kỳ. Lỗi kết nối được coi như trễ vô hạn (quay về primary).
+     */
+    public void checkLag() {
+        long lag;
+        try (Connection connection = lagCheck.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.setQueryTimeout(checkTimeoutSeconds);
+            try (ResultSet rs = statement.executeQuery(LAG_SQL)) {
+                rs.next();
+                lag = Math.round(rs.getDouble(1) * 1000);
+            }
+        } catch (Exception e) {
+            log.debug("Replica lag check failed: {}", e.getMessage());
+            lag = -1;
+        }
+        boolean usable = lag >= 0 && lag <= maxLagMs;
+        if (usable != replicaUsable) {
+            if (usable) {
+                log.info("Read replica available (lag {} ms), routing read-only transactions to replica", lag);
+            } else {
+                log.warn("Read replica unavailable or lagging (lag {} ms, max {} ms), routing reads to primary", lag, maxLagMs);
+            }
+        }
+        lagMs = lag;
+        replicaUsable = usable;
+    }
+
+    /**
+     * Timeout của JDBC tính theo giây, làm tròn lên và ít nhất 1 giây
+     */
+    static int toSeconds(long ms) {
+        return (int) Math.max(1, (ms + 999) / 1000);
+    }
+
+    public boolean isReplicaUsable() {
+        return replicaUsable;
+    }
+
+    /**
+     * Độ trễ đo được lần gần nhất (ms), -1 khi không kết nối được replica
+     */
+    public long getLagMs() {
+        return lagMs;
+    }
+}
@@ -1,6 +1,8 @@
 package com.mvtvn78.smart_plug.config;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
@@ -21,17 +23,28 @@ import java.util.Arrays;
 @EnableWebSecurity
 @EnableMethodSecurity
 public class WebSecurityConfig {
+    /**
+     * Port riêng của actuator (management.server.port), không public ra ngoài; 0 = dùng chung port ứng dụng
+     */
+    @Value("${management.server.port:0}")
+    private int managementPort;
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http,JwtRequestFilter jwtAuthFilter) throws Exception {
         http.cors(cors -> {})
                 .csrf(csrf -> csrf.disable())
                 .httpBasic(httpBasicAuth -> httpBasicAuth.disable())
                 .authorizeHttpRequests(auth -> auth
+                        // dispatch async của response streaming đã được kiểm tra ở request gốc
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers("/user/login").permitAll()
                         .requestMatchers("/user/register").permitAll()
                         .requestMatchers("/iot/**").permitAll()
                         .requestMatchers("/user/forgot").permitAll()
                         .requestMatchers("/user/forgot-password").permitAll()
+                        .requestMatchers("/actuator/health").permitAll()
+                        // Prometheus scrape chỉ không cần token khi đi vào port management (mạng nội bộ)
+                        .requestMatchers(request -> managementPort > 0 && request.getLocalPort() == managementPort
+                                && "/actuator/prometheus".equals(request.getRequestURI())).permitAll()
 //                        .requestMatchers(
 //                                "/user/delete-user",
 //                                "/user/create-user",
@@ -51,7 +64,7 @@ public class WebSecurityConfig {
         configuration.setAllowedOrigins(Arrays.asList("*"));
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS"));
         configuration.setAllowedHeaders(Arrays.asList("authorization", "content-type", "x-auth-token"));
-        configuration.setExposedHeaders(Arrays.asList("x-auth-token"));
+        configuration.setExposedHeaders(Arrays.asList("x-auth-token", "x-next-cursor"));
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", configuration);
         return source;
@@ -2,9 +2,12 @@ package com.mvtvn78.smart_plug.config;
 
 import com.mvtvn78.smart_plug.interceptor.DeviceInterceptor;
 import com.mvtvn78.smart_plug.repository.DeviceRepository;
+import com.mvtvn78.smart_plug.service.DeviceAccessCache;
+import com.mvtvn78.smart_plug.ws.DeflateHandshakeHandler;
 import com.mvtvn78.smart_plug.ws.MyHandler;
 import com.mvtvn78.smart_plug.ws.SessionManager;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.WebSocketHandler;
@@ -15,18 +18,26 @@ import org.springframework.web.socket.config.annotation.*;
 public class WebSocketConfig implements WebSocketConfigurer {
     private final SessionManager sessionManager;
     private final DeviceInterceptor deviceInterceptor;
-    public WebSocketConfig(SessionManager sessionManager, DeviceInterceptor deviceInterceptor) {
+    private final DeviceAccessCache deviceAccessCache;
+    /**
+     * Nén từng message (permessage-deflate) khi client hỗ trợ
+     */
+    @Value("${ws.permessage-deflate:true}")
+    private boolean permessageDeflate;
+    public WebSocketConfig(SessionManager sessionManager, DeviceInterceptor deviceInterceptor, DeviceAccessCache deviceAccessCache) {
         this.sessionManager = sessionManager;
         this.deviceInterceptor = deviceInterceptor;
+        this.deviceAccessCache = deviceAccessCache;
     }
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry.addHandler(myHandler(), "/iot")
+                .setHandshakeHandler(new DeflateHandshakeHandler(permessageDeflate))
                 .addInterceptors(deviceInterceptor)
                 .setAllowedOriginPatterns("*"); // Cho phép tất cả origin
     }
     @Bean
     public WebSocketHandler myHandler() {
-        return new MyHandler(sessionManager);
+        return new MyHandler(sessionManager, deviceAccessCache);
     }
 }
\ No newline at end of file
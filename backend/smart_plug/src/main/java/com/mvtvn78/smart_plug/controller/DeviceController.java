@@ -1,22 +1,35 @@
 package com.mvtvn78.smart_plug.controller;
 
+import com.mvtvn78.smart_plug.data.DashboardDevice;
+import com.mvtvn78.smart_plug.data.DeviceState;
 import com.mvtvn78.smart_plug.data.ServiceResponse;
+import com.mvtvn78.smart_plug.data.StoragePolicyRequest;
+import com.mvtvn78.smart_plug.ingest.DeviceRouteTable;
+import com.mvtvn78.smart_plug.ingest.DeviceStateStore;
+import com.mvtvn78.smart_plug.ingest.MqttSubscriptions;
 import com.mvtvn78.smart_plug.model.Device;
 import com.mvtvn78.smart_plug.model.User;
 import com.mvtvn78.smart_plug.repository.DeviceRepository;
 import com.mvtvn78.smart_plug.repository.UserDeviceRepository;
 import com.mvtvn78.smart_plug.repository.UserRepository;
+import com.mvtvn78.smart_plug.service.DashboardService;
+import com.mvtvn78.smart_plug.service.DeviceAccessCache;
+import com.mvtvn78.smart_plug.service.EnergyService;
 import com.mvtvn78.smart_plug.service.MqttPublisherService;
 import com.mvtvn78.smart_plug.service.UserDeviceService;
+import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.integration.mqtt.inbound.MqttPahoMessageDrivenChannelAdapter;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 @CrossOrigin("*")
 @RestController
 @RequestMapping("/devices")
@@ -26,21 +39,40 @@ public class DeviceController {
     @Autowired
     private MqttPublisherService mqttPublisherService;
     @Autowired
-    private MqttPahoMessageDrivenChannelAdapter mqttAdapter;
+    private MqttSubscriptions mqttSubscriptions;
     @Autowired
     private UserDeviceService userDeviceService;
+    @Autowired
+    private DeviceRouteTable deviceRouteTable;
+    @Autowired
+    private DeviceStateStore deviceStateStore;
+    @Autowired
+    private DeviceAccessCache deviceAccessCache;
+    @Autowired
+    private EnergyService energyService;
+    @Autowired
+    private DashboardService dashboardService;
     @GetMapping
     public List<Device> getAllDevices() {
         return userDeviceService.getListOfDevices();
     }
+    /**
+     * Tất cả device của user kèm trạng thái hiện tại, điện năng hôm nay/tháng này và rollup theo giờ
+     * trong {@code hours} giờ gần nhất (tối đa 168)
+     */
+    @GetMapping("/dashboard")
+    public List<DashboardDevice> getDashboard(@RequestParam(defaultValue = "24") int hours) {
+        return dashboardService.getDashboard(Math.max(1, Math.min(hours, 168)));
+    }
     @PostMapping
     public ResponseEntity<ServiceResponse> createDevice(@RequestBody Device device) {
         ServiceResponse response = new ServiceResponse();
         Device findDeviceData = deviceRepository.findByTopicData(device.getTopicData());
         Device findDeviceRelay = deviceRepository.findByTopicRelay(device.getTopicRelay());
         if(findDeviceData == null &&  findDeviceRelay == null){
-            mqttAdapter.addTopic(device.getTopicData(), 1);
+            mqttSubscriptions.subscribeDevice(device.getTopicData());
             deviceRepository.save(device);
+            deviceRouteTable.put(device);
             response.setStatusCode(HttpStatus.OK.value());
             response.setData(device);
             return ResponseEntity.status(response.getStatusCode()).body(response);
@@ -65,8 +97,79 @@ public class DeviceController {
         Device device = deviceRepository.findById(id).orElse(null);
         ServiceResponse response = userDeviceService.checkDevice(device);
         if(response.getStatusCode() == HttpStatus.OK.value()){
-            mqttPublisherService.publish(device.getTopicRelay(), payload);
+            // không chờ PUBACK, chỉ báo lỗi khi lệnh bị từ chối ngay (mất kết nối, hàng đợi đầy)
+            if (mqttPublisherService.publish(device.getTopicRelay(), payload).isCompletedExceptionally()) {
+                response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE.value());
+                response.setData(null);
+            }
+        }
+        return ResponseEntity.status(response.getStatusCode()).body(response);
+    }
+    @PutMapping("/{id}/storage-policy")
+    public ResponseEntity<ServiceResponse> updateStoragePolicy(@PathVariable Long id, @Valid @RequestBody StoragePolicyRequest request) {
+        Device device = deviceRepository.findById(id).orElse(null);
+        ServiceResponse response = userDeviceService.checkDevice(device);
+        if(response.getStatusCode() == HttpStatus.OK.value()){
+            device.setStorageMode(request.getStorageMode());
+            device.setDeadbandWatts(request.getDeadbandWatts());
+            device.setHeartbeatSeconds(request.getHeartbeatSeconds());
+            deviceRepository.save(device);
+            deviceRouteTable.put(device);
+            response.setData(device);
+        }
+        return ResponseEntity.status(response.getStatusCode()).body(response);
+    }
+    /**
+     * Trạng thái mới nhất của device, đọc từ bộ nhớ (không truy vấn database)
+     */
+    @GetMapping("/{id}/state")
+    public ResponseEntity<ServiceResponse> getState(@PathVariable Long id) {
+        ServiceResponse response = new ServiceResponse();
+        if (!deviceAccessCache.currentUserCanAccess(id)) {
+            response.setStatusCode(HttpStatus.NOT_FOUND.value());
+            response.setData(Map.of("message", "Device not assigned to user"));
+            return ResponseEntity.status(response.getStatusCode()).body(response);
+        }
+        DeviceState state = deviceStateStore.get(id);
+        if (state == null) {
+            response.setStatusCode(HttpStatus.NOT_FOUND.value());
+            response.setData(Map.of("message", "No state received from device"));
+        } else {
+            response.setStatusCode(HttpStatus.OK.value());
+            response.setData(state);
+        }
+        return ResponseEntity.status(response.getStatusCode()).body(response);
+    }
+    /**
+     * Trạng thái mới nhất của tất cả device của user (device chưa gửi mẫu nào thì không có trong danh sách)
+     */
+    @GetMapping("/state")
+    public ResponseEntity<ServiceResponse> getStates() {
+        List<DeviceState> states = new ArrayList<>();
+        for (Long id : deviceAccessCache.currentUserDeviceIds()) {
+            DeviceState state = deviceStateStore.get(id);
+            if (state != null) {
+                states.add(state);
+            }
+        }
+        return ResponseEntity.ok(new ServiceResponse(HttpStatus.OK.value(), states));
+    }
+    /**
+     * Điện năng tiêu thụ (kWh) trong ngày và trong tháng, mặc định hôm nay và tháng này
+     */
+    @GetMapping("/{id}/energy")
+    public ResponseEntity<ServiceResponse> getEnergy(@PathVariable Long id,
+                                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate day,
+                                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate month) {
+        ServiceResponse response = new ServiceResponse();
+        if (!deviceAccessCache.currentUserCanAccess(id)) {
+            response.setStatusCode(HttpStatus.NOT_FOUND.value());
+            response.setData(Map.of("message", "Device not assigned to user"));
+            return ResponseEntity.status(response.getStatusCode()).body(response);
         }
+        LocalDate today = LocalDate.now();
+        response.setStatusCode(HttpStatus.OK.value());
+        response.setData(energyService.getUsage(id, day != null ? day : today, month != null ? month : today));
         return ResponseEntity.status(response.getStatusCode()).body(response);
     }
-}
\ No newline at end of file
+}
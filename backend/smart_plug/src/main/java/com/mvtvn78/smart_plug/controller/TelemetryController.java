@@ -1,20 +1,123 @@
 package com.mvtvn78.smart_plug.controller;
 
-import com.mvtvn78.smart_plug.model.Telemetry;
-import com.mvtvn78.smart_plug.repository.TelemetryRepository;
+import com.mvtvn78.smart_plug.data.RollupPage;
+import com.mvtvn78.smart_plug.data.TelemetryCursor;
+import com.mvtvn78.smart_plug.data.TelemetryPage;
+import com.mvtvn78.smart_plug.model.RollupResolution;
+import com.mvtvn78.smart_plug.service.TelemetryExportService;
 import com.mvtvn78.smart_plug.service.TelemetryService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.List;
-@CrossOrigin("*")
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+@CrossOrigin(origins = "*", exposedHeaders = TelemetryController.NEXT_CURSOR_HEADER)
 @RestController
 @RequestMapping("/telemetry")
 public class TelemetryController {
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int DEFAULT_LIMIT = 1000;
+    private static final int MAX_LIMIT = 5000;
     @Autowired
     private TelemetryService telemetryService;
+    @Autowired
+    private TelemetryExportService telemetryExportService;
+
+    /**
+     * Telemetry của device trong [from, to), mặc định 24 giờ gần nhất, mới nhất trước (order=asc để tăng dần).
+     * Có resolution (minute/hour/day) thì đọc từ bảng rollup thay vì dữ liệu gốc (luôn tăng dần).
+     * Nếu còn dữ liệu, header X-Next-Cursor chứa cursor để lấy trang tiếp theo.
+     */
     @GetMapping("/{deviceId}")
-    public List<Telemetry> getByDevice(@PathVariable Long deviceId) {
-        return telemetryService.getAllByDeviceId(deviceId);
+    public ResponseEntity<?> getByDevice(@PathVariable Long deviceId,
+                                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                         @RequestParam(required = false) String cursor,
+                                         @RequestParam(required = false) String resolution,
+                                         @RequestParam(defaultValue = "desc") String order,
+                                         @RequestParam(defaultValue = "" + DEFAULT_LIMIT) int limit) {
+        boolean newestFirst = "desc".equalsIgnoreCase(order);
+        if (!newestFirst && !"asc".equalsIgnoreCase(order)) {
+            return ResponseEntity.badRequest().body(Map.of("order", "Chỉ hỗ trợ asc hoặc desc"));
+        }
+        if (to == null) {
+            to = LocalDateTime.now();
+        }
+        if (from == null) {
+            from = to.minusDays(1);
+        }
+        TelemetryCursor after = null;
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                after = TelemetryCursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("cursor", "Cursor không hợp lệ"));
+            }
+        }
+        limit = Math.max(1, Math.min(limit, MAX_LIMIT));
+        if (resolution != null && !resolution.isBlank()) {
+            RollupResolution rollupResolution;
+            try {
+                rollupResolution = RollupResolution.valueOf(resolution.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(Map.of("resolution", "Chỉ hỗ trợ minute, hour hoặc day"));
+            }
+            RollupPage page = telemetryService.getRollupPage(deviceId, rollupResolution, from, to, after, limit);
+            return withNextCursor(page.getNextCursor()).body(page.getItems());
+        }
+        TelemetryPage page = telemetryService.getPage(deviceId, from, to, after, limit, newestFirst);
+        return withNextCursor(page.getNextCursor()).body(page.getItems());
+    }
+
+    private ResponseEntity.BodyBuilder withNextCursor(String nextCursor) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        if (nextCursor != null) {
+            builder.header(NEXT_CURSOR_HEADER, nextCursor);
+        }
+        return builder;
+    }
+
+    /**
+     * Xuất toàn bộ telemetry của device trong [from, to) dạng NDJSON hoặc CSV, ghi dần ra response.
+     */
+    @GetMapping("/{deviceId}/export")
+    public ResponseEntity<?> export(@PathVariable Long deviceId,
+                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                    @RequestParam(defaultValue = "ndjson") String format,
+                                    @RequestParam(defaultValue = "false") boolean gzip) {
+        TelemetryExportService.Format exportFormat;
+        try {
+            exportFormat = TelemetryExportService.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("format", "Chỉ hỗ trợ ndjson hoặc csv"));
+        }
+        // kiểm tra quyền trên thread request, phần ghi chạy trên thread async không có SecurityContext
+        if (!telemetryService.isOwner(deviceId)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : LocalDateTime.of(1970, 1, 1, 0, 0);
+        StreamingResponseBody body = out -> {
+            OutputStream target = gzip ? new GZIPOutputStream(out, 64 * 1024) : out;
+            telemetryExportService.export(deviceId, start, end, exportFormat, target);
+            if (gzip) {
+                ((GZIPOutputStream) target).finish();
+            }
+        };
+        String fileName = "telemetry-" + deviceId + "." + exportFormat.getExtension() + (gzip ? ".gz" : "");
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : exportFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .body(body);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,24 @@
+package com.mvtvn78.smart_plug.data;
+
+import com.mvtvn78.smart_plug.model.Device;
+import com.mvtvn78.smart_plug.model.TelemetryRollup;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class DashboardDevice {
+    private Device device;
+    /**
+     * null khi chưa nhận mẫu nào từ device
+     */
+    private DeviceState state;
+    private double todayKwh;
+    private double monthKwh;
+    /**
+     * Rollup theo giờ trong khoảng gần đây
+     */
+    private List<TelemetryRollup> recent;
+}
@@ -0,0 +1,23 @@
+package com.mvtvn78.smart_plug.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class DeviceState {
+    private long deviceId;
+    private boolean relayState;
+    /**
+     * Công suất (W)
+     */
+    private int power;
+    /**
+     * ts do device gửi lên (ms)
+     */
+    private long deviceTs;
+    /**
+     * Thời điểm server nhận mẫu (epoch ms)
+     */
+    private long receivedAt;
+}
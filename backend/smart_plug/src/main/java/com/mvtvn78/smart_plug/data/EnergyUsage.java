@@ -0,0 +1,19 @@
+package com.mvtvn78.smart_plug.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDate;
+
+@Getter
+@AllArgsConstructor
+public class EnergyUsage {
+    private long deviceId;
+    private LocalDate day;
+    private double dayKwh;
+    /**
+     * Ngày đầu tháng
+     */
+    private LocalDate month;
+    private double monthKwh;
+}
@@ -0,0 +1,17 @@
+package com.mvtvn78.smart_plug.data;
+
+import com.mvtvn78.smart_plug.model.TelemetryRollup;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class RollupPage {
+    private List<TelemetryRollup> items;
+    /**
+     * null khi đã hết dữ liệu trong khoảng thời gian
+     */
+    private String nextCursor;
+}
@@ -0,0 +1,17 @@
+package com.mvtvn78.smart_plug.data;
+
+import com.mvtvn78.smart_plug.model.StorageMode;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.Data;
+
+@Data
+public class StoragePolicyRequest {
+    @NotNull(message = "storageMode không được null")
+    private StorageMode storageMode;
+    @PositiveOrZero(message = "deadbandWatts phải >= 0")
+    private Integer deadbandWatts;
+    @Positive(message = "heartbeatSeconds phải là số dương")
+    private Integer heartbeatSeconds;
+}
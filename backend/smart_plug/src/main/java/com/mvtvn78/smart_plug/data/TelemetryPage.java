@@ -0,0 +1,17 @@
+package com.mvtvn78.smart_plug.data;
+
+import com.mvtvn78.smart_plug.model.Telemetry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class TelemetryPage {
+    private List<Telemetry> items;
+    /**
+     * null khi đã hết dữ liệu trong khoảng thời gian
+     */
+    private String nextCursor;
+}
@@ -0,0 +1,135 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gán cho mỗi mẫu một nhãn lần khởi động (boot epoch) của device, lưu cùng device_ts.
+ * Khoá duy nhất (device_id, boot_epoch, device_ts) của từng partition telemetry chặn được message
+ * broker gửi lại (cùng lần khởi động, cùng ts) mà không gộp nhầm hai lần khởi động có ts trùng nhau.
+ * <p>
+ * Nhãn là receivedAt - deviceTs (thời điểm device khởi động theo đồng hồ server) của mẫu đầu tiên
+ * trong lần khởi động, sau đó giữ nguyên cho tới khi phát hiện khởi động lại:
+ * <ul>
+ *     <li>ts nhỏ hơn ts lớn nhất đã thấy mà thời điểm khởi động tính ra lùi về sau ít nhất bằng uptime đã thấy
+ *     (trừ {@code SLACK_MS} cho độ trễ mạng). Message gửi lại có ts cũ nhưng tới muộn đúng bằng phần uptime
+ *     đã trôi qua, nên chỉ bị nhầm khi ts của nó nhỏ hơn {@code SLACK_MS};</li>
+ *     <li>ts lớn hơn mà thời điểm khởi động lệch quá {@code ingest.dedup.boot-tolerance-ms}
+ *     (device khởi động lại trong lúc mất kết nối).</li>
+ * </ul>
+ * Nhãn được lưu vào cột device.boot_epoch (ghi nền theo lô) và nạp lại cùng bảng định tuyến,
+ * nên message broker gửi lại ngay sau khi backend khởi động lại vẫn trùng khoá với dòng đã ghi.
+ * Phải được gọi từ partition của device (trạng thái mỗi device chỉ có một thread truy cập).
+ */
+@Slf4j
+@Component
+public class BootEpochTracker {
+    private static final long SLACK_MS = 2000;
+    private static final String UPDATE_SQL = "update device set boot_epoch = ? where id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    @Value("${ingest.dedup.boot-tolerance-ms:300000}")
+    private long toleranceMs;
+
+    private final Map<Long, Boot> boots = new ConcurrentHashMap<>();
+    /**
+     * deviceId -> nhãn đã lưu trong database, dùng cho mẫu đầu tiên sau khi backend khởi động
+     */
+    private final Map<Long, Long> seeds = new ConcurrentHashMap<>();
+    /**
+     * deviceId -> nhãn mới chưa ghi xuống database
+     */
+    private final Map<Long, Long> dirty = new ConcurrentHashMap<>();
+
+    public BootEpochTracker(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Nhãn đã lưu của device (từ bảng định tuyến); bỏ qua nếu device đã có mẫu.
+     */
+    public void seed(long deviceId, Long bootEpoch) {
+        if (bootEpoch != null && !boots.containsKey(deviceId)) {
+            seeds.put(deviceId, bootEpoch);
+        }
+    }
+
+    /**
+     * @return nhãn lần khởi động của mẫu có ts {@code deviceTs} nhận lúc {@code receivedAt} (ms)
+     */
+    public long epochOf(long deviceId, long deviceTs, long receivedAt) {
+        long estimate = receivedAt - deviceTs;
+        Boot boot = boots.get(deviceId);
+        if (boot == null) {
+            Long seed = seeds.remove(deviceId);
+            long epoch = seed != null && Math.abs(estimate - seed) <= toleranceMs ? seed : estimate;
+            boots.put(deviceId, new Boot(epoch, deviceTs));
+            if (seed == null || epoch != seed) {
+                dirty.put(deviceId, epoch);
+            }
+            return epoch;
+        }
+        boolean rebooted = deviceTs < boot.lastDeviceTs
+                ? estimate - boot.epoch >= boot.lastDeviceTs - SLACK_MS
+                : estimate - boot.epoch > toleranceMs;
+        if (rebooted) {
+            boot.epoch = estimate;
+            boot.lastDeviceTs = deviceTs;
+            dirty.put(deviceId, estimate);
+        } else if (deviceTs > boot.lastDeviceTs) {
+            boot.lastDeviceTs = deviceTs;
+        }
+        return boot.epoch;
+    }
+
+    /**
+     * Ghi các nhãn mới xuống bảng device theo lô; lỗi thì giữ lại cho lần sau.
+     */
+    @Scheduled(fixedDelayString = "${ingest.dedup.boot-flush-interval-ms:10000}")
+    public void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<Long, Long>> batch = new ArrayList<>();
+        for (Map.Entry<Long, Long> entry : dirty.entrySet()) {
+            batch.add(Map.entry(entry.getKey(), entry.getValue()));
+        }
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_SQL, batch, batch.size(), (ps, e) -> {
+                ps.setLong(1, e.getValue());
+                ps.setLong(2, e.getKey());
+            });
+        } catch (Exception e) {
+            log.warn("Saving boot epochs of {} devices failed, will retry: {}", batch.size(), e.toString());
+            return;
+        }
+        // nhãn đổi trong lúc ghi thì giữ lại
+        for (Map.Entry<Long, Long> entry : batch) {
+            dirty.remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        flush();
+    }
+
+    private static final class Boot {
+        private long epoch;
+        private long lastDeviceTs;
+
+        Boot(long epoch, long lastDeviceTs) {
+            this.epoch = epoch;
+            this.lastDeviceTs = lastDeviceTs;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import com.mvtvn78.smart_plug.model.StorageMode;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Quyết định có lưu một mẫu hay không theo {@link StoragePolicy} của device,
+ * so với mẫu được lưu gần nhất (giữ trong bộ nhớ).
+ * Phải được gọi từ partition của device.
+ */
+@Component
+public class DeadbandFilter {
+    private final Map<Long, LastStored> lastStored = new ConcurrentHashMap<>();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    public boolean shouldStore(long deviceId, StoragePolicy policy, boolean relayState, int power, long now) {
+        if (policy.getMode() != StorageMode.DEADBAND) {
+            return true;
+        }
+        LastStored last = lastStored.get(deviceId);
+        if (last == null) {
+            last = new LastStored();
+            lastStored.put(deviceId, last);
+        } else if (last.relayState == relayState
+                && Math.abs(power - last.power) <= policy.getDeadbandWatts()
+                && now - last.time < policy.getHeartbeatMs()) {
+            suppressed.incrementAndGet();
+            return false;
+        }
+        last.relayState = relayState;
+        last.power = power;
+        last.time = now;
+        return true;
+    }
+
+    public long getSuppressed() {
+        return suppressed.get();
+    }
+
+    private static final class LastStored {
+        private boolean relayState;
+        private int power;
+        private long time;
+    }
+}
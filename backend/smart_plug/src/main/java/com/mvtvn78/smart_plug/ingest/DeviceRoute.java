@@ -0,0 +1,19 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import com.mvtvn78.smart_plug.model.StorageMode;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Các cột của device mà bảng định tuyến cần, đọc thẳng bằng projection thay vì nạp cả entity.
+ */
+@Getter
+@AllArgsConstructor
+public class DeviceRoute {
+    private final Long id;
+    private final String topicData;
+    private final StorageMode storageMode;
+    private final Integer deadbandWatts;
+    private final Integer heartbeatSeconds;
+    private final Long bootEpoch;
+}
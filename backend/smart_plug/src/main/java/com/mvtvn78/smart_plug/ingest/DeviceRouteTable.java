@@ -0,0 +1,156 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import com.mvtvn78.smart_plug.model.Device;
+import com.mvtvn78.smart_plug.repository.DeviceRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bảng định tuyến topicData -> deviceId (kèm chính sách lưu) cho luồng MQTT ingest.
+ * Được nạp nền sau khi ứng dụng sẵn sàng (không làm chậm khởi động) và cập nhật
+ * trực tiếp khi tạo device, nên việc định tuyến một message không truy vấn database và không cấp phát bộ nhớ.
+ * <p>
+ * Topic chưa có trong bảng (kể cả khi đang nạp) được ghi vào cache âm và tra database trên một thread riêng
+ * (device tạo từ instance khác hoặc thẳng trong database); message đó bị bỏ qua,
+ * các message sau được định tuyến khi tra xong. Mỗi topic lạ chỉ được tra lại sau khi kết quả âm hết hạn.
+ */
+@Slf4j
+@Component
+public class DeviceRouteTable {
+    public static final long UNKNOWN = TopicRouteMap.MISSING;
+
+    private final DeviceRepository deviceRepository;
+    private final BootEpochTracker bootEpochTracker;
+    @Value("${ingest.route.negative-ttl-ms:60000}")
+    private long negativeTtlMs;
+    @Value("${ingest.route.negative-max-size:10000}")
+    private int negativeMaxSize;
+
+    /**
+     * topicData -> deviceId
+     */
+    private final TopicRouteMap routes = new TopicRouteMap();
+
+    /**
+     * deviceId -> chính sách lưu telemetry
+     */
+    private final Map<Long, StoragePolicy> policies = new ConcurrentHashMap<>();
+
+    /**
+     * topicData không có device -> thời điểm hết hạn (ms)
+     */
+    private final Map<String, Long> unknownTopics = new ConcurrentHashMap<>();
+
+    private ExecutorService resolver;
+
+    public DeviceRouteTable(DeviceRepository deviceRepository, BootEpochTracker bootEpochTracker) {
+        this.deviceRepository = deviceRepository;
+        this.bootEpochTracker = bootEpochTracker;
+    }
+
+    @PostConstruct
+    public void start() {
+        // tra topic lạ: một thread, hàng đợi có giới hạn, đầy thì bỏ (topic vẫn nằm trong cache âm)
+        resolver = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(negativeMaxSize), r -> {
+                    Thread thread = new Thread(r, "device-route-resolver");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void preload() {
+        Thread loader = new Thread(() -> {
+            try {
+                // chỉ đọc các cột cần cho định tuyến, không nạp entity Device
+                for (DeviceRoute route : deviceRepository.findAllRoutes()) {
+                    // không ghi đè bản mới hơn do createDevice hoặc resolve đã đưa vào
+                    if (routes.get(route.getTopicData()) == UNKNOWN) {
+                        bootEpochTracker.seed(route.getId(), route.getBootEpoch());
+                        put(route.getId(), route.getTopicData(), StoragePolicy.of(route));
+                    }
+                }
+                log.info("Loaded {} device routes", routes.size());
+            } catch (Exception e) {
+                log.warn("Device route preload failed, falling back to lookups on demand: {}", e.toString());
+            }
+        });
+        loader.setName("device-route-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        resolver.shutdownNow();
+    }
+
+    /**
+     * Trả về deviceId của topic, hoặc {@link #UNKNOWN} nếu topic chưa có trong bảng.
+     * Không truy vấn database: topic lạ được tra nền, kết quả có cho các message sau.
+     */
+    public long resolve(String topic) {
+        long deviceId = routes.get(topic);
+        if (deviceId != UNKNOWN) {
+            return deviceId;
+        }
+        long now = System.currentTimeMillis();
+        Long expiresAt = unknownTopics.get(topic);
+        if (expiresAt != null && expiresAt > now) {
+            return UNKNOWN;
+        }
+        if (unknownTopics.size() >= negativeMaxSize) {
+            unknownTopics.clear();
+        }
+        unknownTopics.put(topic, now + negativeTtlMs);
+        resolver.execute(() -> lookup(topic));
+        return UNKNOWN;
+    }
+
+    private void lookup(String topic) {
+        try {
+            DeviceRoute route = deviceRepository.findRouteByTopicData(topic);
+            if (route != null) {
+                bootEpochTracker.seed(route.getId(), route.getBootEpoch());
+                put(route.getId(), route.getTopicData(), StoragePolicy.of(route));
+                log.info("Added route for topic {} -> device {}", topic, route.getId());
+            }
+        } catch (Exception e) {
+            log.warn("Device route lookup for topic {} failed: {}", topic, e.toString());
+        }
+    }
+
+    public void put(Device device) {
+        if (device.getId() == null || device.getTopicData() == null) {
+            return;
+        }
+        put(device.getId(), device.getTopicData(), StoragePolicy.of(device));
+    }
+
+    private void put(long deviceId, String topicData, StoragePolicy policy) {
+        policies.put(deviceId, policy);
+        routes.put(topicData, deviceId);
+        unknownTopics.remove(topicData);
+    }
+
+    public StoragePolicy policyOf(long deviceId) {
+        return policies.getOrDefault(deviceId, StoragePolicy.ALL);
+    }
+
+    public int size() {
+        return routes.size();
+    }
+}
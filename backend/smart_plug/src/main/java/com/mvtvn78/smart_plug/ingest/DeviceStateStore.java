@@ -0,0 +1,88 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import com.mvtvn78.smart_plug.data.DeviceState;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * Trạng thái mới nhất của từng device (relay, power, ts của device, thời điểm server nhận),
+ * lưu trong các mảng primitive chia theo khối 4096 device, đánh chỉ số trực tiếp bằng deviceId.
+ * Khoảng 21 byte mỗi device (1 triệu device ~ 21 MB), không tạo object cho mỗi mẫu.
+ * Ghi từ partition của device, đọc từ thread HTTP; mỗi khối có khoá riêng.
+ */
+@Component
+public class DeviceStateStore {
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final byte PRESENT = 1;
+    private static final byte RELAY_ON = 2;
+
+    private volatile Chunk[] chunks = new Chunk[16];
+
+    public void update(long deviceId, boolean relayState, int power, long deviceTs, long receivedAt) {
+        Chunk chunk = chunkFor(deviceId, true);
+        int i = (int) (deviceId & CHUNK_MASK);
+        synchronized (chunk) {
+            chunk.flags[i] = (byte) (PRESENT | (relayState ? RELAY_ON : 0));
+            chunk.power[i] = power;
+            chunk.deviceTs[i] = deviceTs;
+            chunk.receivedAt[i] = receivedAt;
+        }
+    }
+
+    /**
+     * @return null khi chưa nhận được mẫu nào của device
+     */
+    public DeviceState get(long deviceId) {
+        Chunk chunk = chunkFor(deviceId, false);
+        if (chunk == null) {
+            return null;
+        }
+        int i = (int) (deviceId & CHUNK_MASK);
+        synchronized (chunk) {
+            byte flags = chunk.flags[i];
+            if ((flags & PRESENT) == 0) {
+                return null;
+            }
+            return new DeviceState(deviceId, (flags & RELAY_ON) != 0, chunk.power[i], chunk.deviceTs[i], chunk.receivedAt[i]);
+        }
+    }
+
+    private Chunk chunkFor(long deviceId, boolean create) {
+        if (deviceId < 0) {
+            throw new IllegalArgumentException("deviceId " + deviceId);
+        }
+        long index = deviceId >>> CHUNK_BITS;
+        if (index >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("deviceId " + deviceId);
+        }
+        Chunk[] current = chunks;
+        Chunk chunk = index < current.length ? current[(int) index] : null;
+        if (chunk != null || !create) {
+            return chunk;
+        }
+        synchronized (this) {
+            current = chunks;
+            if (index >= current.length) {
+                current = Arrays.copyOf(current, (int) Math.max(current.length * 2L, index + 1));
+            }
+            chunk = current[(int) index];
+            if (chunk == null) {
+                chunk = new Chunk();
+                current[(int) index] = chunk;
+            }
+            chunks = current;
+            return chunk;
+        }
+    }
+
+    private static final class Chunk {
+        private final byte[] flags = new byte[CHUNK_SIZE];
+        private final int[] power = new int[CHUNK_SIZE];
+        private final long[] deviceTs = new long[CHUNK_SIZE];
+        private final long[] receivedAt = new long[CHUNK_SIZE];
+    }
+}
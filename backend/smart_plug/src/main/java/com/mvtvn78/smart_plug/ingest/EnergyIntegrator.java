@@ -0,0 +1,177 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import com.mvtvn78.smart_plug.model.EnergyPeriod;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Tích phân công suất theo thời gian thành điện năng (Wh) cho từng device:
+ * mỗi khoảng giữa hai mẫu liên tiếp tính theo hình thang, relay tắt thì công suất là 0,
+ * khoảng mất dữ liệu dài hơn {@code ingest.energy.max-gap-ms} bị bỏ qua,
+ * khoảng vắt qua nửa đêm được chia cho hai ngày (công suất tại nửa đêm nội suy tuyến tính).
+ * Điện năng được cộng vào bộ đếm ngày và tháng trong bộ nhớ rồi định kỳ upsert vào bảng energy_counter.
+ * {@link #add} phải được gọi từ partition của device.
+ * <p>
+ * Đọc qua {@link #readConsistent} loại trừ với {@link #flush}: phần đang ghi xuống database
+ * vẫn được tính cho tới khi transaction commit, và không bị tính hai lần sau đó.
+ */
+@Slf4j
+@Component
+public class EnergyIntegrator {
+    private static final String UPSERT_SQL =
+            "insert into energy_counter (device_id, period, period_start, energy_wh) values (?, ?, ?, ?)"
+                    + " on conflict (device_id, period, period_start) do update set"
+                    + " energy_wh = energy_counter.energy_wh + excluded.energy_wh";
+    private static final EnergyPeriod[] PERIODS = EnergyPeriod.values();
+    private static final double MS_PER_HOUR = 3_600_000d;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    @Value("${ingest.energy.max-gap-ms:60000}")
+    private long maxGapMs;
+
+    private final Map<Key, double[]> pending = new ConcurrentHashMap<>();
+    private final Map<Long, LastSample> lastSamples = new ConcurrentHashMap<>();
+    /**
+     * read: đọc database + pending; write: flush (lấy pending, ghi, gộp lại khi lỗi)
+     */
+    private final ReadWriteLock flushLock = new ReentrantReadWriteLock();
+
+    public EnergyIntegrator(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public void add(long deviceId, boolean relayState, int power, long receivedAt) {
+        double watts = relayState ? Math.max(power, 0) : 0;
+        LastSample last = lastSamples.get(deviceId);
+        if (last == null) {
+            last = new LastSample();
+            lastSamples.put(deviceId, last);
+        } else {
+            long gap = receivedAt - last.time;
+            if (gap > 0 && gap <= maxGapMs) {
+                integrate(deviceId, last.time, last.watts, receivedAt, watts);
+            }
+        }
+        last.watts = watts;
+        last.time = receivedAt;
+    }
+
+    /**
+     * Hình thang từ (from, fromWatts) tới (to, toWatts), cắt tại mỗi nửa đêm theo múi giờ hệ thống
+     */
+    private void integrate(long deviceId, long from, double fromWatts, long to, double toWatts) {
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate day = LocalDate.ofInstant(Instant.ofEpochMilli(from), zone);
+        long start = from;
+        double startWatts = fromWatts;
+        while (start < to) {
+            long end = Math.min(to, day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli());
+            double endWatts = end == to ? toWatts : fromWatts + (toWatts - fromWatts) * (end - from) / (to - from);
+            double wh = (startWatts + endWatts) / 2 * (end - start) / MS_PER_HOUR;
+            if (wh > 0) {
+                for (EnergyPeriod period : PERIODS) {
+                    pending.merge(new Key(deviceId, period, period.startOf(day)), new double[]{wh},
+                            (a, b) -> {
+                                a[0] += b[0];
+                                return a;
+                            });
+                }
+            }
+            start = end;
+            startWatts = endWatts;
+            day = day.plusDays(1);
+        }
+    }
+
+    /**
+     * Chạy {@code read} (đọc energy_counter rồi cộng {@link #pendingWh}) không song song với {@link #flush},
+     * nên phần đang flush không bị bỏ sót (chưa commit) hay tính trùng (đã commit nhưng còn trong pending).
+     */
+    public <T> T readConsistent(Supplier<T> read) {
+        flushLock.readLock().lock();
+        try {
+            return read.get();
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Điện năng (Wh) đã tích phân nhưng chưa ghi xuống database
+     */
+    public double pendingWh(long deviceId, EnergyPeriod period, LocalDate periodStart) {
+        double[] wh = pending.get(new Key(deviceId, period, periodStart));
+        return wh == null ? 0 : wh[0];
+    }
+
+    @Scheduled(fixedDelayString = "${ingest.energy.flush-interval-ms:10000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        flushLock.writeLock().lock();
+        try {
+            flushPending();
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    private void flushPending() {
+        List<Key> keys = new ArrayList<>();
+        List<Object[]> rows = new ArrayList<>();
+        for (Key key : pending.keySet()) {
+            double[] wh = pending.remove(key);
+            if (wh != null) {
+                keys.add(key);
+                rows.add(new Object[]{key.deviceId(), key.period().name(), Date.valueOf(key.periodStart()), wh[0]});
+            }
+        }
+        try {
+            // upsert cộng dồn: cả lô trong một transaction, lỗi giữa chừng thì rollback hết rồi mới gộp lại vào pending (không cộng hai lần)
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPSERT_SQL, rows));
+        } catch (Exception e) {
+            log.warn("Energy flush of {} counters failed, retrying later: {}", keys.size(), e.toString());
+            for (int i = 0; i < keys.size(); i++) {
+                double wh = (double) rows.get(i)[3];
+                pending.merge(keys.get(i), new double[]{wh}, (a, b) -> {
+                    a[0] += b[0];
+                    return a;
+                });
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        flush();
+    }
+
+    private record Key(long deviceId, EnergyPeriod period, LocalDate periodStart) {
+    }
+
+    private static final class LastSample {
+        private double watts;
+        private long time;
+    }
+}
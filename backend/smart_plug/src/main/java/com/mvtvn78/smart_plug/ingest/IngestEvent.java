@@ -0,0 +1,15 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Một message MQTT đã được định tuyến tới device, chờ xử lý trong partition.
+ */
+@Getter
+@AllArgsConstructor
+public class IngestEvent {
+    private final long deviceId;
+    private final byte[] payload;
+    private final long receivedAt;
+}
@@ -0,0 +1,67 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import com.mvtvn78.smart_plug.service.MqttPublisherService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Đăng ký gauge/counter đọc từ các bộ đếm sẵn có của pipeline (không thêm chi phí trên hot path).
+ * Các timer theo từng bước nằm trong chính component đo.
+ */
+@Component
+@RequiredArgsConstructor
+public class IngestMetrics implements MeterBinder {
+    private final TelemetryWriter telemetryWriter;
+    private final SpillLog spillLog;
+    private final SpillReplayer spillReplayer;
+    private final TelemetryDeduplicator telemetryDeduplicator;
+    private final DeadbandFilter deadbandFilter;
+    private final TelemetryRollups telemetryRollups;
+    private final DeviceRouteTable deviceRouteTable;
+    private final MqttPublisherService mqttPublisherService;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("telemetry.writer.queue", telemetryWriter, TelemetryWriter::getQueueDepth)
+                .description("Số mẫu đang chờ ghi database")
+                .register(registry);
+        Gauge.builder("telemetry.writer.degraded", telemetryWriter, w -> w.isDegraded() ? 1 : 0)
+                .description("1 khi database lỗi và mẫu đang được ghi ra spill log")
+                .register(registry);
+        FunctionCounter.builder("telemetry.writer.rows", telemetryWriter, TelemetryWriter::getFlushedRows)
+                .register(registry);
+        FunctionCounter.builder("telemetry.writer.failed.flushes", telemetryWriter, TelemetryWriter::getFailedFlushes)
+                .register(registry);
+        FunctionCounter.builder("telemetry.writer.blocked", telemetryWriter, TelemetryWriter::getBlockedWrites)
+                .register(registry);
+        FunctionCounter.builder("telemetry.spill.rows", telemetryWriter, TelemetryWriter::getSpilledRows)
+                .register(registry);
+        FunctionCounter.builder("telemetry.spill.replayed", spillReplayer, SpillReplayer::getReplayedRows)
+                .register(registry);
+        Gauge.builder("telemetry.spill.pending", spillLog, SpillLog::pendingBytes)
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("ingest.duplicates", telemetryDeduplicator, TelemetryDeduplicator::getDuplicates)
+                .register(registry);
+        FunctionCounter.builder("ingest.deadband.suppressed", deadbandFilter, DeadbandFilter::getSuppressed)
+                .register(registry);
+        Gauge.builder("ingest.rollup.pending", telemetryRollups, TelemetryRollups::getPendingBuckets)
+                .description("Số bucket rollup chưa ghi database")
+                .register(registry);
+        FunctionCounter.builder("ingest.rollup.dropped", telemetryRollups, TelemetryRollups::getDropped)
+                .description("Bucket rollup bị bỏ vì database lỗi quá lâu")
+                .register(registry);
+        Gauge.builder("ingest.routes", deviceRouteTable, DeviceRouteTable::size)
+                .register(registry);
+        Gauge.builder("mqtt.publish.inflight", mqttPublisherService, MqttPublisherService::getInFlight)
+                .register(registry);
+        FunctionCounter.builder("mqtt.publish.failed", mqttPublisherService, MqttPublisherService::getFailed)
+                .register(registry);
+        FunctionCounter.builder("mqtt.publish.rejected", mqttPublisherService, MqttPublisherService::getRejected)
+                .register(registry);
+    }
+}
@@ -0,0 +1,116 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Chia luồng ingest thành N partition theo hash của deviceId.
+ * Mỗi partition có hàng đợi và thread riêng, nên message của cùng một device
+ * luôn được xử lý tuần tự, còn các device khác nhau chạy song song.
+ */
+@Slf4j
+public class IngestPartitions {
+    /**
+     * Đánh dấu cuối hàng đợi khi dừng
+     */
+    private static final IngestEvent STOP = new IngestEvent(-1, new byte[0], 0);
+
+    private final Partition[] partitions;
+    private final Consumer<IngestEvent> handler;
+
+    public IngestPartitions(int count, int queueCapacity, Consumer<IngestEvent> handler) {
+        this.handler = handler;
+        this.partitions = new Partition[count];
+        for (int i = 0; i < count; i++) {
+            partitions[i] = new Partition(i, queueCapacity);
+        }
+    }
+
+    public void start() {
+        for (Partition partition : partitions) {
+            partition.thread.start();
+        }
+    }
+
+    /**
+     * Đưa event vào partition của device. Chặn nếu hàng đợi partition đầy.
+     */
+    public void dispatch(IngestEvent event) {
+        Partition partition = partitions[partitionOf(event.getDeviceId())];
+        try {
+            partition.queue.put(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int partitionOf(long deviceId) {
+        return Math.floorMod(Long.hashCode(deviceId), partitions.length);
+    }
+
+    public int size() {
+        return partitions.length;
+    }
+
+    public int queueDepth(int partition) {
+        return partitions[partition].queue.size();
+    }
+
+    /**
+     * Xử lý nốt event còn lại trong hàng đợi rồi dừng các thread.
+     * Gọi sau khi đã ngừng nhận message: event đưa vào sau đó không được xử lý.
+     * Không interrupt thread đang xử lý, để event đang dở (có thể đang chờ ghi) được ghi xong.
+     */
+    public void stop(long timeoutMs) throws InterruptedException {
+        for (Partition partition : partitions) {
+            // đứng sau mọi event đang chờ nên thread dừng khi đã xử lý hết hàng đợi
+            partition.queue.put(STOP);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        for (Partition partition : partitions) {
+            partition.thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            if (partition.thread.isAlive()) {
+                log.warn("Ingest partition {} did not drain in {} ms, {} events left",
+                        partition.thread.getName(), timeoutMs, partition.queue.size());
+            }
+        }
+    }
+
+    private void handle(IngestEvent event) {
+        try {
+            handler.accept(event);
+        } catch (Exception e) {
+            log.error("Ingest failed for deviceId={}", event.getDeviceId(), e);
+        }
+    }
+
+    private class Partition {
+        private final BlockingQueue<IngestEvent> queue;
+        private final Thread thread;
+
+        Partition(int index, int queueCapacity) {
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.thread = new Thread(this::run);
+            this.thread.setName("ingest-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        private void run() {
+            while (true) {
+                try {
+                    IngestEvent event = queue.take();
+                    if (event == STOP) {
+                        return;
+                    }
+                    handle(event);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
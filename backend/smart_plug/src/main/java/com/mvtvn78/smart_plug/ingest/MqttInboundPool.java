@@ -0,0 +1,82 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.integration.mqtt.inbound.MqttPahoMessageDrivenChannelAdapter;
+
+import java.util.List;
+
+/**
+ * Nhóm các kết nối MQTT inbound (mỗi kết nối một client Paho, một socket và một thread nhận),
+ * cùng đổ vào mqttInputChannel. Pool quản lý vòng đời của các adapter như một bean.
+ * {@link #setOnStarted} chạy một lần sau khi các adapter đã kết nối (subscribe theo lô khi sharded).
+ */
+public class MqttInboundPool implements SmartLifecycle, BeanFactoryAware, ApplicationContextAware, InitializingBean {
+    private final List<MqttPahoMessageDrivenChannelAdapter> adapters;
+    private volatile boolean running;
+    private Runnable onStarted;
+    private boolean started;
+
+    public MqttInboundPool(List<MqttPahoMessageDrivenChannelAdapter> adapters) {
+        this.adapters = adapters;
+    }
+
+    public void setOnStarted(Runnable onStarted) {
+        this.onStarted = onStarted;
+    }
+
+    public List<MqttPahoMessageDrivenChannelAdapter> getAdapters() {
+        return adapters;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        adapters.forEach(adapter -> adapter.setBeanFactory(beanFactory));
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        adapters.forEach(adapter -> adapter.setApplicationContext(applicationContext));
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        for (int i = 0; i < adapters.size(); i++) {
+            adapters.get(i).setBeanName("mqttInbound" + i);
+            adapters.get(i).afterPropertiesSet();
+        }
+    }
+
+    @Override
+    public void start() {
+        adapters.forEach(MqttPahoMessageDrivenChannelAdapter::start);
+        running = true;
+        // adapter giữ danh sách topic qua stop/start, chỉ subscribe lần đầu
+        if (onStarted != null && !started) {
+            started = true;
+            onStarted.run();
+        }
+    }
+
+    @Override
+    public void stop() {
+        adapters.forEach(MqttPahoMessageDrivenChannelAdapter::stop);
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // khởi động sau các consumer, giống các message producer của Spring Integration
+        return Integer.MAX_VALUE / 2;
+    }
+}
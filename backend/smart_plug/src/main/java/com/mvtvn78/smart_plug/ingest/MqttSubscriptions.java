@@ -0,0 +1,212 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.integration.mqtt.inbound.MqttPahoMessageDrivenChannelAdapter;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Quản lý các topic mà backend subscribe để nhận telemetry.
+ * Mặc định chỉ subscribe một wildcard theo quy ước topic của firmware ({@code /data/+});
+ * topic của device không khớp wildcard mới được subscribe riêng.
+ * Khi bật shared subscription, topic được đăng ký dạng {@code $share/<group>/<topic>}
+ * để broker chia message cho nhiều instance backend cùng group.
+ * <p>
+ * Khi có nhiều kết nối inbound (sharded): MQTT không chia được một wildcard theo hash,
+ * nên không dùng wildcard mà subscribe topic của từng device trên đúng một kết nối theo hash
+ * của topic (các nhóm không giao nhau). Message của một device luôn đi qua cùng một socket
+ * và một thread nhận của Paho, nên thứ tự theo device được giữ mà không phụ thuộc broker.
+ * Đổi lại, khởi động phải đọc toàn bộ topic từ database và SUBSCRIBE từng topic (theo lô
+ * {@code mqtt.inbound.subscribe-batch-size} topic mỗi gói để không vượt giới hạn kích thước gói của broker).
+ */
+@Slf4j
+public class MqttSubscriptions {
+    public static final int QOS = 1;
+    public static final int DEFAULT_SUBSCRIBE_BATCH_SIZE = 500;
+
+    private final String sharedGroup;
+    private final String topicFilter;
+    private final List<MqttPahoMessageDrivenChannelAdapter> adapters = new ArrayList<>();
+    private int subscribeBatchSize = DEFAULT_SUBSCRIBE_BATCH_SIZE;
+
+    public MqttSubscriptions(String sharedGroup, String topicFilter) {
+        this.sharedGroup = sharedGroup;
+        this.topicFilter = topicFilter;
+    }
+
+    public void setSubscribeBatchSize(int subscribeBatchSize) {
+        this.subscribeBatchSize = Math.max(1, subscribeBatchSize);
+    }
+
+    public void register(MqttPahoMessageDrivenChannelAdapter adapter) {
+        adapters.add(adapter);
+    }
+
+    public boolean isShared() {
+        return StringUtils.hasText(sharedGroup);
+    }
+
+    public String filterFor(String topic) {
+        if (!isShared() || topic.startsWith("$share/")) {
+            return topic;
+        }
+        // topic firmware bắt đầu bằng '/', nên filter có dạng $share/<group>//data/... (đúng cú pháp)
+        return "$share/" + sharedGroup + "/" + topic;
+    }
+
+    /**
+     * true khi có nhiều kết nối inbound: mỗi topic device chỉ được subscribe trên một kết nối
+     */
+    public boolean isSharded() {
+        return adapters.size() > 1;
+    }
+
+    public boolean hasTopicFilter() {
+        return StringUtils.hasText(topicFilter);
+    }
+
+    public String getTopicFilter() {
+        return topicFilter;
+    }
+
+    /**
+     * true nếu topic đã nằm trong wildcard, không cần subscribe riêng
+     */
+    public boolean covers(String topic) {
+        return !isSharded() && hasTopicFilter() && matches(topicFilter, topic);
+    }
+
+    /**
+     * Subscribe topic của một device nếu wildcard chưa bao gồm nó.
+     */
+    public void subscribeDevice(String topic) {
+        if (!covers(topic)) {
+            subscribe(topic);
+        }
+    }
+
+    /**
+     * Subscribe wildcard (chỉ dùng khi có một kết nối inbound).
+     */
+    public void subscribeTopicFilter() {
+        String filter = filterFor(topicFilter);
+        adapters.get(0).addTopic(filter, QOS);
+        log.info("Subscribed to: {}", filter);
+    }
+
+    /**
+     * Subscribe nhiều topic device, mỗi kết nối nhận nhóm topic của nó theo lô {@code subscribeBatchSize} topic.
+     * Adapter đã kết nối gửi mỗi lô thành một gói SUBSCRIBE; adapter chưa start gộp mọi topic vào
+     * gói SUBSCRIBE lúc kết nối, nên phải gọi sau khi các adapter đã start.
+     */
+    public void subscribeAll(List<String> topics) {
+        List<List<String>> shards = new ArrayList<>();
+        adapters.forEach(adapter -> shards.add(new ArrayList<>()));
+        for (String topic : topics) {
+            shards.get(connectionOf(topic)).add(filterFor(topic));
+        }
+        for (int i = 0; i < adapters.size(); i++) {
+            List<String> shard = shards.get(i);
+            if (shard.isEmpty()) {
+                continue;
+            }
+            for (int from = 0; from < shard.size(); from += subscribeBatchSize) {
+                List<String> batch = shard.subList(from, Math.min(shard.size(), from + subscribeBatchSize));
+                int[] qos = new int[batch.size()];
+                Arrays.fill(qos, QOS);
+                adapters.get(i).addTopics(batch.toArray(new String[0]), qos);
+            }
+        }
+        log.info("Subscribed to {} device topic(s) on {} connection(s)", topics.size(), adapters.size());
+    }
+
+    /**
+     * Subscribe một topic trên đúng một kết nối, chọn theo hash của topic.
+     */
+    public void subscribe(String topic) {
+        adapters.get(connectionOf(topic)).addTopic(filterFor(topic), QOS);
+        log.debug("Subscribed to: {}", filterFor(topic));
+    }
+
+    public int connectionOf(String topic) {
+        return shardOf(topic, adapters.size());
+    }
+
+    /**
+     * Kết nối (0..connections-1) nhận topic, theo hash của topic
+     */
+    public static int shardOf(String topic, int connections) {
+        return Math.floorMod(topic.hashCode(), connections);
+    }
+
+    /**
+     * So khớp topic với filter MQTT ('+' một cấp, '#' mọi cấp còn lại).
+     * Tiền tố {@code $share/<group>/} được bỏ qua; wildcard ở cấp đầu không khớp topic bắt đầu bằng '$'.
+     */
+    public static boolean matches(String filter, String topic) {
+        String[] f = stripShare(filter).split("/", -1);
+        String[] t = topic.split("/", -1);
+        if ((f[0].equals("+") || f[0].equals("#")) && topic.startsWith("$")) {
+            return false;
+        }
+        for (int i = 0; i < f.length; i++) {
+            if (f[i].equals("#")) {
+                return true;
+            }
+            if (i >= t.length) {
+                return false;
+            }
+            if (!f[i].equals("+") && !f[i].equals(t[i])) {
+                return false;
+            }
+        }
+        return f.length == t.length;
+    }
+
+    /**
+     * Chuyển filter MQTT thành regex (POSIX) tương đương để lọc trong database.
+     */
+    public static String toRegex(String filter) {
+        StringBuilder regex = new StringBuilder("^");
+        String[] levels = stripShare(filter).split("/", -1);
+        for (int i = 0; i < levels.length; i++) {
+            if (levels[i].equals("#")) {
+                // '#' khớp cả cấp cha
+                if (i > 0) {
+                    regex.append("(/.*)?");
+                } else {
+                    regex.append("([^$].*)?");
+                }
+                return regex.append("$").toString();
+            }
+            if (i > 0) {
+                regex.append("/");
+            }
+            if (levels[i].equals("+")) {
+                regex.append(i > 0 ? "[^/]*" : "([^$/][^/]*)?");
+                continue;
+            }
+            for (char c : levels[i].toCharArray()) {
+                if (".^$*+?()[]{}|\\".indexOf(c) >= 0) {
+                    regex.append('\\');
+                }
+                regex.append(c);
+            }
+        }
+        return regex.append("$").toString();
+    }
+
+    /**
+     * Bỏ tiền tố {@code $share/<group>/}: shared subscription khớp đúng các topic của filter gốc.
+     */
+    static String stripShare(String filter) {
+        if (!filter.startsWith("$share/")) {
+            return filter;
+        }
+        int groupEnd = filter.indexOf('/', "$share/".length());
+        return groupEnd < 0 ? filter : filter.substring(groupEnd + 1);
+    }
+}
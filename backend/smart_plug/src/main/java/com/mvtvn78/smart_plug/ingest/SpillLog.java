@@ -0,0 +1,391 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import com.mvtvn78.smart_plug.model.Telemetry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log trên đĩa cho telemetry khi database chậm hoặc không kết nối được.
+ * Dữ liệu được ghi nối tiếp vào các segment memory-mapped có kích thước cố định,
+ * đầy thì xoay sang segment mới. {@link SpillReplayer} đọc lại theo thứ tự,
+ * ghi vào bảng Telemetry rồi {@link #commit()} để lưu checkpoint và xoá segment đã xong.
+ * <p>
+ * Record: [int length][int crc32][body], body = [byte version][long deviceId]
+ * [long timestamp ms][byte flags][int power][long deviceTs][long bootEpoch][int payloadLength][payload UTF-8].
+ * length = 0 là hết dữ liệu. Record version 1 (không có flags/power/deviceTs) và version 2
+ * (không có bootEpoch) vẫn đọc được.
+ */
+@Slf4j
+@Component
+public class SpillLog {
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int HEADER_BYTES = 8;
+    private static final byte VERSION = 3;
+    private static final int FLAG_RELAY = 1;
+    private static final int FLAG_RELAY_ON = 1 << 1;
+    private static final int FLAG_POWER = 1 << 2;
+    private static final int FLAG_DEVICE_TS = 1 << 3;
+    private static final int FLAG_BOOT_EPOCH = 1 << 4;
+
+    @Value("${telemetry.spill.dir:./data/spill}")
+    private String dir;
+    @Value("${telemetry.spill.segment-bytes:67108864}")
+    private int segmentBytes;
+
+    private Path directory;
+
+    /* ===== ghi (được bảo vệ bởi synchronized) ===== */
+    private long activeSeq;
+    private FileChannel activeChannel;
+    private MappedByteBuffer activeBuffer;
+    private int writePos;
+    private final CRC32 writeCrc = new CRC32();
+
+    /* ===== đọc (chỉ thread replayer) ===== */
+    private volatile long readSeq;
+    private volatile int readPos;
+    private long pendingSeq;
+    private int pendingPos;
+    private ByteBuffer pendingBuffer;
+    private final CRC32 readCrc = new CRC32();
+
+    @PostConstruct
+    public void open() throws IOException {
+        directory = Paths.get(dir);
+        Files.createDirectories(directory);
+        List<Long> segments = listSegments();
+        if (segments.isEmpty()) {
+            openActive(0);
+        } else {
+            openActive(segments.get(segments.size() - 1));
+            writePos = scanEnd(activeBuffer, segmentBytes);
+            activeBuffer.putInt(writePos, 0);
+        }
+        readCheckpoint(segments.isEmpty() ? activeSeq : segments.get(0));
+        pendingSeq = readSeq;
+        pendingPos = readPos;
+        if (!isEmpty()) {
+            log.info("Spill log has pending telemetry from segment {} offset {}", readSeq, readPos);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        activeBuffer.force();
+        activeChannel.close();
+    }
+
+    /* =========================
+       APPEND
+       ========================= */
+
+    public synchronized void append(Telemetry telemetry) {
+        byte[] payload = telemetry.getRawPayload() == null
+                ? null
+                : telemetry.getRawPayload().getBytes(StandardCharsets.UTF_8);
+        int bodyLength = 1 + 8 + 8 + 1 + 4 + 8 + 8 + 4 + (payload == null ? 0 : payload.length);
+        if (HEADER_BYTES + bodyLength + 4 > segmentBytes) {
+            log.error("Telemetry record of {} bytes does not fit in a spill segment, dropped", bodyLength);
+            return;
+        }
+        if (writePos + HEADER_BYTES + bodyLength + 4 > segmentBytes) {
+            rotate();
+        }
+        ByteBuffer buf = activeBuffer;
+        int bodyStart = writePos + HEADER_BYTES;
+        buf.position(bodyStart);
+        buf.put(VERSION);
+        buf.putLong(telemetry.getDeviceId());
+        buf.putLong(toEpochMilli(telemetry.getTimestamp()));
+        int flags = 0;
+        if (telemetry.getRelayState() != null) {
+            flags |= FLAG_RELAY | (telemetry.getRelayState() ? FLAG_RELAY_ON : 0);
+        }
+        if (telemetry.getPower() != null) {
+            flags |= FLAG_POWER;
+        }
+        if (telemetry.getDeviceTs() != null) {
+            flags |= FLAG_DEVICE_TS;
+        }
+        if (telemetry.getBootEpoch() != null) {
+            flags |= FLAG_BOOT_EPOCH;
+        }
+        buf.put((byte) flags);
+        buf.putInt(telemetry.getPower() == null ? 0 : telemetry.getPower());
+        buf.putLong(telemetry.getDeviceTs() == null ? 0 : telemetry.getDeviceTs());
+        buf.putLong(telemetry.getBootEpoch() == null ? 0 : telemetry.getBootEpoch());
+        if (payload == null) {
+            buf.putInt(-1);
+        } else {
+            buf.putInt(payload.length);
+            buf.put(payload);
+        }
+        writeCrc.reset();
+        writeCrc.update(buf.duplicate().position(bodyStart).limit(bodyStart + bodyLength));
+        buf.putInt(writePos + 4, (int) writeCrc.getValue());
+        // đánh dấu kết thúc trước, rồi mới công bố record bằng length
+        buf.putInt(bodyStart + bodyLength, 0);
+        buf.putInt(writePos, bodyLength);
+        writePos = bodyStart + bodyLength;
+    }
+
+    public synchronized void append(List<Telemetry> batch) {
+        batch.forEach(this::append);
+    }
+
+    /**
+     * Đẩy các trang đã ghi xuống đĩa.
+     */
+    public synchronized void sync() {
+        activeBuffer.force();
+    }
+
+    private void rotate() {
+        activeBuffer.force();
+        try {
+            activeChannel.close();
+            openActive(activeSeq + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void openActive(long seq) throws IOException {
+        activeSeq = seq;
+        activeChannel = FileChannel.open(segmentPath(seq),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        activeBuffer = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        writePos = 0;
+    }
+
+    /* =========================
+       READ / REPLAY
+       ========================= */
+
+    /**
+     * Đọc tối đa {@code max} record kể từ checkpoint. Phải gọi {@link #commit()}
+     * khi đã ghi thành công, hoặc {@link #rewind()} để đọc lại lần sau.
+     */
+    public List<Telemetry> read(int max) {
+        List<Telemetry> out = new ArrayList<>();
+        while (out.size() < max) {
+            if (pendingBuffer == null && !mapPending()) {
+                break;
+            }
+            int limit = limitOf(pendingSeq);
+            int length = pendingPos + HEADER_BYTES <= limit ? pendingBuffer.getInt(pendingPos) : 0;
+            if (length <= 0 || pendingPos + HEADER_BYTES + length > limit
+                    || !validCrc(pendingBuffer, pendingPos, length)) {
+                if (pendingSeq >= activeSeq()) {
+                    break;
+                }
+                // hết segment cũ, chuyển sang segment tiếp theo
+                pendingSeq++;
+                pendingPos = 0;
+                pendingBuffer = null;
+                continue;
+            }
+            out.add(decode(pendingBuffer, pendingPos + HEADER_BYTES));
+            pendingPos += HEADER_BYTES + length;
+        }
+        return out;
+    }
+
+    public void commit() {
+        for (long seq = readSeq; seq < pendingSeq; seq++) {
+            try {
+                Files.deleteIfExists(segmentPath(seq));
+            } catch (IOException e) {
+                log.warn("Could not delete spill segment {}: {}", seq, e.toString());
+            }
+        }
+        readSeq = pendingSeq;
+        readPos = pendingPos;
+        writeCheckpoint();
+    }
+
+    public void rewind() {
+        if (pendingSeq != readSeq) {
+            pendingBuffer = null;
+        }
+        pendingSeq = readSeq;
+        pendingPos = readPos;
+    }
+
+    public boolean isEmpty() {
+        return pendingBytes() == 0;
+    }
+
+    /**
+     * Số byte chưa được replay (ước lượng, tính theo kích thước segment).
+     */
+    public long pendingBytes() {
+        long active;
+        int written;
+        synchronized (this) {
+            active = activeSeq;
+            written = writePos;
+        }
+        if (readSeq == active) {
+            return Math.max(0, written - readPos);
+        }
+        return (active - readSeq) * (long) segmentBytes - readPos + written;
+    }
+
+    private boolean mapPending() {
+        long active = activeSeq();
+        while (pendingSeq < active && !Files.exists(segmentPath(pendingSeq))) {
+            pendingSeq++;
+            pendingPos = 0;
+        }
+        try (FileChannel channel = FileChannel.open(segmentPath(pendingSeq), StandardOpenOption.READ)) {
+            pendingBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), segmentBytes));
+            return true;
+        } catch (IOException e) {
+            log.warn("Could not map spill segment {}: {}", pendingSeq, e.toString());
+            return false;
+        }
+    }
+
+    private int limitOf(long seq) {
+        synchronized (this) {
+            return seq == activeSeq ? writePos : pendingBuffer.capacity();
+        }
+    }
+
+    private synchronized long activeSeq() {
+        return activeSeq;
+    }
+
+    private Telemetry decode(ByteBuffer buf, int pos) {
+        ByteBuffer body = buf.duplicate().position(pos);
+        byte version = body.get();
+        Telemetry telemetry = new Telemetry();
+        telemetry.setDeviceId(body.getLong());
+        telemetry.setTimestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(body.getLong()), ZoneId.systemDefault()));
+        if (version >= 2) {
+            int flags = body.get();
+            int power = body.getInt();
+            long deviceTs = body.getLong();
+            long bootEpoch = version >= 3 ? body.getLong() : 0;
+            if ((flags & FLAG_RELAY) != 0) {
+                telemetry.setRelayState((flags & FLAG_RELAY_ON) != 0);
+            }
+            if ((flags & FLAG_POWER) != 0) {
+                telemetry.setPower(power);
+            }
+            if ((flags & FLAG_DEVICE_TS) != 0) {
+                telemetry.setDeviceTs(deviceTs);
+            }
+            if ((flags & FLAG_BOOT_EPOCH) != 0) {
+                telemetry.setBootEpoch(bootEpoch);
+            }
+        }
+        int payloadLength = body.getInt();
+        if (payloadLength >= 0) {
+            byte[] payload = new byte[payloadLength];
+            body.get(payload);
+            telemetry.setPayload(new String(payload, StandardCharsets.UTF_8));
+        }
+        return telemetry;
+    }
+
+    private boolean validCrc(ByteBuffer buf, int pos, int length) {
+        readCrc.reset();
+        readCrc.update(buf.duplicate().position(pos + HEADER_BYTES).limit(pos + HEADER_BYTES + length));
+        return (int) readCrc.getValue() == buf.getInt(pos + 4);
+    }
+
+    /**
+     * Tìm vị trí kết thúc dữ liệu hợp lệ của segment (khi khởi động lại).
+     */
+    private int scanEnd(ByteBuffer buf, int capacity) {
+        int pos = 0;
+        while (pos + HEADER_BYTES <= capacity) {
+            int length = buf.getInt(pos);
+            if (length <= 0 || pos + HEADER_BYTES + length > capacity || !validCrc(buf, pos, length)) {
+                break;
+            }
+            pos += HEADER_BYTES + length;
+        }
+        return pos;
+    }
+
+    /* =========================
+       FILES
+       ========================= */
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path segmentPath(long seq) {
+        return directory.resolve(String.format("%020d%s", seq, SEGMENT_SUFFIX));
+    }
+
+    private void readCheckpoint(long firstSeq) throws IOException {
+        readSeq = firstSeq;
+        readPos = 0;
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(checkpoint)) {
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+        if (buf.remaining() < 12) {
+            return;
+        }
+        long seq = buf.getLong();
+        int pos = buf.getInt();
+        // segment của checkpoint đã bị xoá -> bắt đầu từ segment cũ nhất còn lại
+        if (seq >= firstSeq && Files.exists(segmentPath(seq))) {
+            readSeq = seq;
+            readPos = pos;
+        }
+    }
+
+    private void writeCheckpoint() {
+        ByteBuffer buf = ByteBuffer.allocate(12);
+        buf.putLong(readSeq).putInt(readPos);
+        Path tmp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try {
+            Files.write(tmp, buf.array());
+            Files.move(tmp, directory.resolve(CHECKPOINT_FILE),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not write spill checkpoint: {}", e.toString());
+        }
+    }
+
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
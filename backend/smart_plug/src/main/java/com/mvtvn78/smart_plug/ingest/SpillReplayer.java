@@ -0,0 +1,93 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import com.mvtvn78.smart_plug.model.Telemetry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Đọc lại {@link SpillLog} và ghi vào bảng Telemetry khi database đã hoạt động lại.
+ * Lần ghi thành công đầu tiên cũng đưa {@link TelemetryWriter} về chế độ bình thường.
+ */
+@Slf4j
+@Component
+public class SpillReplayer {
+    private final SpillLog spillLog;
+    private final TelemetryWriter telemetryWriter;
+    @Value("${telemetry.spill.replay-interval-ms:1000}")
+    private long replayIntervalMs;
+    @Value("${telemetry.writer.batch-size:500}")
+    private int batchSize;
+
+    private Thread worker;
+    private volatile boolean running;
+    private final AtomicLong replayedRows = new AtomicLong();
+
+    public SpillReplayer(SpillLog spillLog, TelemetryWriter telemetryWriter) {
+        this.spillLog = spillLog;
+        this.telemetryWriter = telemetryWriter;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        worker = new Thread(this::run);
+        worker.setName("telemetry-spill-replayer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        worker.interrupt();
+        worker.join(10_000);
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                spillLog.sync();
+                if (!replayOnce()) {
+                    Thread.sleep(replayIntervalMs);
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                log.error("Spill replay error", e);
+            }
+        }
+    }
+
+    /**
+     * @return true nếu đã ghi được một lô và có thể còn dữ liệu
+     */
+    private boolean replayOnce() {
+        List<Telemetry> batch = spillLog.read(batchSize);
+        if (batch.isEmpty()) {
+            return false;
+        }
+        try {
+            telemetryWriter.insert(batch);
+        } catch (Exception e) {
+            spillLog.rewind();
+            log.debug("Spill replay of {} rows failed: {}", batch.size(), e.toString());
+            return false;
+        }
+        spillLog.commit();
+        long total = replayedRows.addAndGet(batch.size());
+        if (spillLog.isEmpty()) {
+            log.info("Spill log drained, {} rows replayed in total", total);
+        }
+        return true;
+    }
+
+    public long getReplayedRows() {
+        return replayedRows.get();
+    }
+}
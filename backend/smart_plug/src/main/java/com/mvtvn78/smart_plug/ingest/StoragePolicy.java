@@ -0,0 +1,37 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import com.mvtvn78.smart_plug.model.Device;
+import com.mvtvn78.smart_plug.model.StorageMode;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Chính sách lưu telemetry của một device, bản bất biến để đọc trong luồng ingest.
+ */
+@Getter
+@AllArgsConstructor
+public class StoragePolicy {
+    public static final StoragePolicy ALL = new StoragePolicy(StorageMode.ALL, 0, 0);
+    public static final int DEFAULT_HEARTBEAT_SECONDS = 300;
+
+    private final StorageMode mode;
+    private final int deadbandWatts;
+    private final long heartbeatMs;
+
+    public static StoragePolicy of(Device device) {
+        return of(device.getStorageMode(), device.getDeadbandWatts(), device.getHeartbeatSeconds());
+    }
+
+    public static StoragePolicy of(DeviceRoute route) {
+        return of(route.getStorageMode(), route.getDeadbandWatts(), route.getHeartbeatSeconds());
+    }
+
+    private static StoragePolicy of(StorageMode mode, Integer deadbandWatts, Integer heartbeatSeconds) {
+        if (mode != StorageMode.DEADBAND) {
+            return ALL;
+        }
+        int deadband = deadbandWatts == null ? 0 : deadbandWatts;
+        int heartbeat = heartbeatSeconds == null ? DEFAULT_HEARTBEAT_SECONDS : heartbeatSeconds;
+        return new StoragePolicy(StorageMode.DEADBAND, deadband, heartbeat * 1000L);
+    }
+}
@@ -0,0 +1,70 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loại bỏ message bị broker gửi lại (QoS 1, reconnect) dựa trên ts của device.
+ * Mỗi device giữ một cửa sổ vòng các ts gần nhất trong mảng long,
+ * kiểm tra O(window) = O(1) và không truy vấn database.
+ * ts là uptime của device (về 0 khi khởi động lại), nên chỉ so trong cửa sổ gần đây;
+ * bản gửi lại lọt qua cửa sổ (gửi lại muộn, backend vừa khởi động lại) bị khoá duy nhất
+ * (device_id, boot_epoch, device_ts) trong database chặn (xem BootEpochTracker).
+ * Phải được gọi từ partition của device (mỗi cửa sổ chỉ có một thread truy cập).
+ */
+@Component
+public class TelemetryDeduplicator {
+    @Value("${ingest.dedup.window:16}")
+    private int windowSize;
+
+    private final Map<Long, Window> windows = new ConcurrentHashMap<>();
+    private final AtomicLong duplicates = new AtomicLong();
+
+    /**
+     * @return true nếu ts này của device đã được nhận gần đây
+     */
+    public boolean isDuplicate(long deviceId, long deviceTs) {
+        Window window = windows.computeIfAbsent(deviceId, k -> new Window(windowSize));
+        if (window.contains(deviceTs)) {
+            duplicates.incrementAndGet();
+            return true;
+        }
+        window.add(deviceTs);
+        return false;
+    }
+
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    private static final class Window {
+        private final long[] values;
+        private int next;
+        private int count;
+
+        Window(int size) {
+            values = new long[size];
+        }
+
+        boolean contains(long value) {
+            for (int i = 0; i < count; i++) {
+                if (values[i] == value) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void add(long value) {
+            values[next] = value;
+            next = (next + 1) % values.length;
+            if (count < values.length) {
+                count++;
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import com.mvtvn78.smart_plug.model.Telemetry;
+import com.mvtvn78.smart_plug.ws.SessionManager;
+import com.mvtvn78.smart_plug.ws.TelemetryFrame;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Luồng xử lý telemetry từ MQTT: định tuyến trên thread nhận của Paho,
+ * phần còn lại (gửi WebSocket, ghi database) chạy trong partition của device.
+ */
+@Slf4j
+@Service
+public class TelemetryIngestService {
+    private static final long DRAIN_TIMEOUT_MS = 30_000;
+
+    private final DeviceRouteTable deviceRouteTable;
+    private final TelemetryWriter telemetryWriter;
+    private final SessionManager sessionManager;
+    private final TelemetryDeduplicator telemetryDeduplicator;
+    private final BootEpochTracker bootEpochTracker;
+    private final DeadbandFilter deadbandFilter;
+    private final TelemetryRollups telemetryRollups;
+    private final DeviceStateStore deviceStateStore;
+    private final EnergyIntegrator energyIntegrator;
+    private final MqttInboundPool mqttInboundPool;
+    @Value("${ingest.partitions:0}")
+    private int partitionCount;
+    @Value("${ingest.partition.queue-capacity:10000}")
+    private int partitionQueueCapacity;
+
+    /* =========================
+       METRICS
+       ========================= */
+
+    private final MeterRegistry meterRegistry;
+    private final Timer receiveTimer;
+    private final Timer routeTimer;
+    private final Timer queueTimer;
+    private final Timer processTimer;
+    private final Timer wsSendTimer;
+    private final Counter unknownTopics;
+
+    private IngestPartitions partitions;
+    private final ThreadLocal<TelemetryPayloadParser> parsers =
+            ThreadLocal.withInitial(TelemetryPayloadParser::new);
+
+    public TelemetryIngestService(DeviceRouteTable deviceRouteTable,
+                                  TelemetryWriter telemetryWriter,
+                                  SessionManager sessionManager,
+                                  TelemetryDeduplicator telemetryDeduplicator,
+                                  BootEpochTracker bootEpochTracker,
+                                  DeadbandFilter deadbandFilter,
+                                  TelemetryRollups telemetryRollups,
+                                  DeviceStateStore deviceStateStore,
+                                  EnergyIntegrator energyIntegrator,
+                                  MqttInboundPool mqttInboundPool,
+                                  MeterRegistry meterRegistry) {
+        this.deviceRouteTable = deviceRouteTable;
+        this.telemetryWriter = telemetryWriter;
+        this.sessionManager = sessionManager;
+        this.telemetryDeduplicator = telemetryDeduplicator;
+        this.bootEpochTracker = bootEpochTracker;
+        this.deadbandFilter = deadbandFilter;
+        this.telemetryRollups = telemetryRollups;
+        this.deviceStateStore = deviceStateStore;
+        this.energyIntegrator = energyIntegrator;
+        this.mqttInboundPool = mqttInboundPool;
+        this.meterRegistry = meterRegistry;
+        this.receiveTimer = timer("ingest.receive", "Thời gian xử lý message trên thread nhận MQTT");
+        this.routeTimer = timer("ingest.route", "Thời gian tra device theo topic");
+        this.queueTimer = timer("ingest.queue", "Thời gian message chờ trong partition");
+        this.processTimer = timer("ingest.process", "Thời gian xử lý message trong partition");
+        this.wsSendTimer = timer("ingest.ws.send", "Thời gian đưa telemetry vào hàng đợi gửi của các session WebSocket");
+        this.unknownTopics = Counter.builder("ingest.unknown.topic")
+                .description("Message từ topic không thuộc device nào")
+                .register(meterRegistry);
+    }
+
+    private Timer timer(String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        int count = partitionCount > 0 ? partitionCount : Runtime.getRuntime().availableProcessors();
+        partitions = new IngestPartitions(count, partitionQueueCapacity, this::process);
+        partitions.start();
+        for (int i = 0; i < partitions.size(); i++) {
+            int partition = i;
+            meterRegistry.gauge("ingest.partition.queue", Tags.of("partition", Integer.toString(i)),
+                    partitions, p -> p.queueDepth(partition));
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        // ngừng nhận message trước, sau đó xử lý hết event đã nhận (writer dừng sau bean này)
+        mqttInboundPool.stop();
+        partitions.stop(DRAIN_TIMEOUT_MS);
+    }
+
+    /**
+     * Chạy trên thread nhận MQTT: chỉ định tuyến và đưa vào partition.
+     */
+    public void onMessage(String topic, byte[] payload) {
+        long start = System.nanoTime();
+        if (log.isDebugEnabled()) {
+            log.debug("Received MQTT message on topic {}: {}", topic, new String(payload, StandardCharsets.UTF_8));
+        }
+        // Lấy deviceId theo topic thực tế (bảng định tuyến trong bộ nhớ)
+        long deviceId = deviceRouteTable.resolve(topic);
+        routeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (deviceId == DeviceRouteTable.UNKNOWN) {
+            unknownTopics.increment();
+            log.debug("Không tìm thấy device với topic: {}", topic);
+            return;
+        }
+        partitions.dispatch(new IngestEvent(deviceId, payload, System.currentTimeMillis()));
+        receiveTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void process(IngestEvent event) {
+        long start = System.nanoTime();
+        queueTimer.record(System.currentTimeMillis() - event.getReceivedAt(), TimeUnit.MILLISECONDS);
+        processEvent(event);
+        processTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void processEvent(IngestEvent event) {
+        long deviceId = event.getDeviceId();
+        Telemetry telemetry = new Telemetry();
+        boolean store = true;
+        TelemetryPayloadParser parser = parsers.get();
+        if (parser.parse(event.getPayload())) {
+            // bỏ message broker gửi lại
+            if (telemetryDeduplicator.isDuplicate(deviceId, parser.deviceTs())) {
+                return;
+            }
+            deviceStateStore.update(deviceId, parser.relayState(), parser.power(), parser.deviceTs(), event.getReceivedAt());
+            // rollup tính trên mọi mẫu, kể cả mẫu không được lưu theo deadband
+            telemetryRollups.add(deviceId, parser.relayState(), parser.power(), event.getReceivedAt());
+            energyIntegrator.add(deviceId, parser.relayState(), parser.power(), event.getReceivedAt());
+            store = deadbandFilter.shouldStore(deviceId, deviceRouteTable.policyOf(deviceId),
+                    parser.relayState(), parser.power(), event.getReceivedAt());
+            telemetry.setRelayState(parser.relayState());
+            telemetry.setPower(parser.power());
+            telemetry.setDeviceTs(parser.deviceTs());
+            telemetry.setBootEpoch(bootEpochTracker.epochOf(deviceId, parser.deviceTs(), event.getReceivedAt()));
+        } else {
+            // không đúng định dạng firmware -> giữ nguyên payload
+            telemetry.setPayload(new String(event.getPayload(), StandardCharsets.UTF_8));
+        }
+        String deviceKey = Long.toString(deviceId);
+        if (sessionManager.hasSessions(deviceKey)) {
+            long sendStart = System.nanoTime();
+            // mã hoá một lần cho mọi session của device
+            TelemetryFrame frame = telemetry.getRawPayload() != null
+                    ? TelemetryFrame.raw(telemetry.getRawPayload())
+                    : new TelemetryFrame(deviceId, telemetry.getRelayState(), telemetry.getPower(), telemetry.getDeviceTs(), event.getReceivedAt());
+            try{
+                sessionManager.sendToDevice(deviceKey, frame);
+            }
+            catch (Exception e){
+                log.error("WebSocket fan-out failed for device {}", deviceId, e);
+            }
+            wsSendTimer.record(System.nanoTime() - sendStart, TimeUnit.NANOSECONDS);
+        }
+        // WebSocket vẫn nhận mọi mẫu, chỉ việc lưu bị lọc theo chính sách
+        if (!store) {
+            return;
+        }
+        telemetry.setDeviceId(deviceId);
+        telemetry.setTimestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(event.getReceivedAt()), ZoneId.systemDefault()));
+        telemetryWriter.write(telemetry);
+        log.debug("Queued telemetry for deviceId = {}", deviceId);
+    }
+
+    public IngestPartitions getPartitions() {
+        return partitions;
+    }
+}
@@ -0,0 +1,219 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Bảng telemetry được chia partition theo tháng (PostgreSQL range partition trên cột timestamp).
+ * <ul>
+ *     <li>Lần đầu chạy: bảng thường do Hibernate tạo được đổi tên thành telemetry_legacy và gắn vào
+ *     bảng partition mới như partition chứa toàn bộ dữ liệu cũ (tới hết tháng hiện tại).</li>
+ *     <li>Tạo trước partition cho {@code telemetry.partition.months-ahead} tháng tới.</li>
+ *     <li>Retention: xoá cả partition tháng đã quá {@code telemetry.retention.months} tháng (0 = giữ hết);
+ *     telemetry_legacy bị xoá khi cận trên của nó đã quá hạn.</li>
+ *     <li>Cảnh báo khi telemetry_default có dữ liệu (mẫu nằm ngoài mọi partition tháng).</li>
+ *     <li>Mọi partition (tháng, telemetry_legacy, telemetry_default) có khoá duy nhất
+ *     (device_id, boot_epoch, device_ts) để bỏ message broker gửi lại.</li>
+ * </ul>
+ * Chạy sau Hibernate (ddl-auto=update) để không bị Hibernate tạo lại bảng.
+ */
+@Slf4j
+@Component
+@DependsOn("entityManagerFactory")
+public class TelemetryPartitionManager {
+    private static final String TABLE = "telemetry";
+    private static final String LEGACY = "telemetry_legacy";
+    private static final String DEFAULT = "telemetry_default";
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("'telemetry_y'yyyy'm'MM");
+    private static final Pattern PARTITION_NAME = Pattern.compile("telemetry_y(\\d{4})m(\\d{2})");
+    private static final Pattern UPPER_BOUND = Pattern.compile("TO \\('([^']+)'\\)");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    @Value("${telemetry.partition.months-ahead:2}")
+    private int monthsAhead;
+    @Value("${telemetry.retention.months:0}")
+    private int retentionMonths;
+
+    public TelemetryPartitionManager(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void init() {
+        String kind = jdbcTemplate.queryForObject(
+                "select coalesce((select relkind::text from pg_class where oid = to_regclass(?)), '')", String.class, TABLE);
+        if ("r".equals(kind)) {
+            convertLegacyTable();
+        }
+        maintain();
+    }
+
+    /**
+     * Tạo partition các tháng tới và xoá partition quá hạn; chạy mỗi ngày.
+     */
+    @Scheduled(cron = "${telemetry.partition.maintenance-cron:0 30 0 * * *}")
+    public void maintain() {
+        LocalDate month = LocalDate.now().withDayOfMonth(1);
+        LocalDate legacyUpper = legacyUpperBound();
+        for (int i = 0; i <= monthsAhead; i++) {
+            LocalDate start = month.plusMonths(i);
+            if (legacyUpper != null && start.isBefore(legacyUpper)) {
+                continue;
+            }
+            createPartition(start);
+        }
+        // partition tạo trước khi có khoá, telemetry_legacy và telemetry_default
+        for (String name : partitionNames()) {
+            createBootKey(name);
+        }
+        if (retentionMonths > 0) {
+            dropPartitionsBefore(month.minusMonths(retentionMonths));
+        }
+        checkDefaultPartition();
+    }
+
+    private void convertLegacyTable() {
+        LocalDate boundary = LocalDate.now().withDayOfMonth(1).plusMonths(1);
+        log.info("Converting table {} to monthly partitions, existing rows kept in {} (until {})", TABLE, LEGACY, boundary);
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("alter table telemetry rename to " + LEGACY);
+            jdbcTemplate.execute("alter table " + LEGACY + " rename constraint telemetry_pkey to telemetry_legacy_pkey");
+            jdbcTemplate.execute("alter index if exists idx_telemetry_device_time rename to telemetry_legacy_device_time");
+            // partition không được có identity riêng: id lấy từ sequence chung của bảng cha
+            jdbcTemplate.execute("alter table " + LEGACY + " alter column id drop identity if exists");
+            jdbcTemplate.execute("create sequence if not exists telemetry_id_seq");
+            jdbcTemplate.execute("select setval('telemetry_id_seq', coalesce((select max(id) from " + LEGACY + "), 0) + 1, false)");
+            jdbcTemplate.execute("alter table " + LEGACY + " alter column timestamp set not null");
+            jdbcTemplate.execute("create table telemetry (like " + LEGACY + " including defaults) partition by range (timestamp)");
+            jdbcTemplate.execute("alter table telemetry alter column id set default nextval('telemetry_id_seq')");
+            jdbcTemplate.execute("alter sequence telemetry_id_seq owned by telemetry.id");
+            // khoá chính/unique của bảng partition phải chứa cột partition
+            jdbcTemplate.execute("alter table telemetry add primary key (id, timestamp)");
+            jdbcTemplate.execute("create index idx_telemetry_device_time on telemetry (device_id, timestamp, id)");
+            jdbcTemplate.execute("alter table telemetry attach partition " + LEGACY
+                    + " for values from (minvalue) to ('" + boundary + "')");
+            // mẫu có timestamp ngoài các partition đã tạo (đồng hồ sai, chưa kịp tạo partition) không làm hỏng lô ghi
+            jdbcTemplate.execute("create table telemetry_default partition of telemetry default");
+            createBootKey(LEGACY);
+            createBootKey(DEFAULT);
+        });
+    }
+
+    private void createPartition(LocalDate start) {
+        String name = start.format(NAME_FORMAT);
+        Boolean exists = jdbcTemplate.queryForObject("select to_regclass(?) is not null", Boolean.class, name);
+        if (Boolean.TRUE.equals(exists)) {
+            return;
+        }
+        LocalDate end = start.plusMonths(1);
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("create table " + name + " partition of telemetry for values from ('"
+                    + start + "') to ('" + end + "')");
+            createBootKey(name);
+        });
+        log.info("Created telemetry partition {} [{}, {})", name, start, end);
+    }
+
+    /**
+     * device_ts là uptime của device (về 0 sau mỗi lần khởi động) nên chỉ duy nhất trong một lần khởi động:
+     * khoá gồm cả boot_epoch (BootEpochTracker). Message broker gửi lại giữ nguyên ts và nhận cùng nhãn nên bị
+     * {@code on conflict do nothing} bỏ qua, kể cả sau khi backend khởi động lại hoặc khi replay spill log.
+     * Khoá nằm trên từng partition (không chứa timestamp), nên bản gửi lại rơi sang partition tháng sau không bị chặn.
+     * Dòng cũ không có boot_epoch (null) không bao giờ trùng khoá.
+     * Thay index (device_id, device_ts, timestamp) cũ, vốn không chặn được message gửi lại (timestamp là lúc nhận).
+     */
+    private void createBootKey(String partition) {
+        jdbcTemplate.execute("drop index if exists " + partition + "_dedup");
+        jdbcTemplate.execute("create unique index if not exists " + partition + "_boot_ts on " + partition
+                + " (device_id, boot_epoch, device_ts)");
+    }
+
+    private void dropPartitionsBefore(LocalDate cutoff) {
+        for (String name : partitionsEndingBy(cutoff)) {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.execute("alter table " + TABLE + " detach partition " + name);
+                jdbcTemplate.execute("drop table " + name);
+            });
+            log.info("Dropped telemetry partition {} (retention {} months)", name, retentionMonths);
+        }
+    }
+
+    /**
+     * Các partition (telemetry_legacy và partition tháng) có cận trên không sau {@code cutoff},
+     * tức toàn bộ dữ liệu đã cũ hơn cutoff; cũ nhất trước.
+     */
+    public List<String> partitionsEndingBy(LocalDate cutoff) {
+        List<String> result = new ArrayList<>();
+        // partition legacy chứa dữ liệu từ minvalue tới cận trên
+        LocalDate legacyUpper = legacyUpperBound();
+        if (legacyUpper != null && !legacyUpper.isAfter(cutoff)) {
+            result.add(LEGACY);
+        }
+        List<String> months = new ArrayList<>();
+        for (String name : partitionNames()) {
+            Matcher m = PARTITION_NAME.matcher(name);
+            if (!m.matches()) {
+                continue;
+            }
+            LocalDate end = LocalDate.of(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)), 1).plusMonths(1);
+            if (!end.isAfter(cutoff)) {
+                months.add(name);
+            }
+        }
+        Collections.sort(months);
+        result.addAll(months);
+        return result;
+    }
+
+    /**
+     * Dòng rơi vào telemetry_default là mẫu có timestamp ngoài các partition đã tạo (đồng hồ sai, thiếu partition):
+     * không bị retention xoá và sẽ chặn việc tạo partition trùng khoảng, nên phải được xử lý bằng tay.
+     */
+    private void checkDefaultPartition() {
+        Boolean exists = jdbcTemplate.queryForObject("select to_regclass(?) is not null", Boolean.class, DEFAULT);
+        if (!Boolean.TRUE.equals(exists)) {
+            return;
+        }
+        Integer rows = jdbcTemplate.queryForObject("select count(*) from (select 1 from " + DEFAULT + " limit 1000) t", Integer.class);
+        if (rows != null && rows > 0) {
+            log.warn("Partition {} holds {}{} rows outside the monthly partitions, check device clocks and move them manually",
+                    DEFAULT, rows, rows >= 1000 ? "+" : "");
+        }
+    }
+
+    private List<String> partitionNames() {
+        return jdbcTemplate.queryForList(
+                "select c.relname from pg_inherits i join pg_class c on c.oid = i.inhrelid"
+                        + " where i.inhparent = to_regclass(?)", String.class, TABLE);
+    }
+
+    /**
+     * Cận trên của partition telemetry_legacy (null nếu không có)
+     */
+    private LocalDate legacyUpperBound() {
+        List<String> bounds = jdbcTemplate.queryForList(
+                "select pg_get_expr(relpartbound, oid) from pg_class where oid = to_regclass(?)", String.class, LEGACY);
+        if (bounds.isEmpty() || bounds.get(0) == null) {
+            return null;
+        }
+        Matcher m = UPPER_BOUND.matcher(bounds.get(0));
+        return m.find() ? LocalDate.parse(m.group(1).substring(0, 10)) : null;
+    }
+}
@@ -0,0 +1,192 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parser cho payload cố định của firmware:
+ * {@code {"stateRelay": bool, "power": "N", "ts": ms}}.
+ * Đọc trực tiếp trên mảng byte, không cấp phát bộ nhớ cho mỗi message.
+ * Không thread-safe: mỗi thread dùng một instance và đọc kết quả ngay sau {@link #parse(byte[])}.
+ */
+public final class TelemetryPayloadParser {
+    private static final byte[] STATE_RELAY = "stateRelay".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] POWER = "power".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TS = "ts".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] buf;
+    private int pos;
+    private int end;
+
+    private boolean hasRelay;
+    private boolean hasPower;
+    private boolean hasTs;
+    private boolean relayState;
+    private int power;
+    private long deviceTs;
+    private long number;
+
+    /**
+     * @return true nếu payload đúng định dạng firmware và đủ cả ba trường
+     */
+    public boolean parse(byte[] payload) {
+        return parse(payload, 0, payload.length);
+    }
+
+    public boolean parse(byte[] payload, int offset, int length) {
+        buf = payload;
+        pos = offset;
+        end = offset + length;
+        hasRelay = false;
+        hasPower = false;
+        hasTs = false;
+        boolean ok = parseObject();
+        buf = null;
+        return ok && hasRelay && hasPower && hasTs;
+    }
+
+    public boolean relayState() {
+        return relayState;
+    }
+
+    public int power() {
+        return power;
+    }
+
+    public long deviceTs() {
+        return deviceTs;
+    }
+
+    private boolean parseObject() {
+        skipWhitespace();
+        if (!consume('{')) {
+            return false;
+        }
+        while (true) {
+            skipWhitespace();
+            if (!consume('"')) {
+                return false;
+            }
+            int keyStart = pos;
+            while (pos < end && buf[pos] != '"') {
+                if (buf[pos] == '\\') {
+                    return false;
+                }
+                pos++;
+            }
+            if (pos >= end) {
+                return false;
+            }
+            int keyEnd = pos++;
+            skipWhitespace();
+            if (!consume(':')) {
+                return false;
+            }
+            skipWhitespace();
+            if (keyEquals(keyStart, keyEnd, STATE_RELAY)) {
+                if (hasRelay || !parseBoolean()) {
+                    return false;
+                }
+                hasRelay = true;
+            } else if (keyEquals(keyStart, keyEnd, POWER)) {
+                // firmware gửi power dạng chuỗi, chấp nhận cả dạng số
+                boolean quoted = consume('"');
+                if (hasPower || !parseNumber(9)) {
+                    return false;
+                }
+                if (quoted && !consume('"')) {
+                    return false;
+                }
+                power = (int) number;
+                hasPower = true;
+            } else if (keyEquals(keyStart, keyEnd, TS)) {
+                if (hasTs || !parseNumber(18)) {
+                    return false;
+                }
+                deviceTs = number;
+                hasTs = true;
+            } else {
+                return false;
+            }
+            skipWhitespace();
+            if (consume(',')) {
+                continue;
+            }
+            if (!consume('}')) {
+                return false;
+            }
+            skipWhitespace();
+            return pos == end;
+        }
+    }
+
+    private boolean parseNumber(int maxDigits) {
+        int start = pos;
+        long value = 0;
+        while (pos < end && buf[pos] >= '0' && buf[pos] <= '9') {
+            value = value * 10 + (buf[pos] - '0');
+            pos++;
+        }
+        int digits = pos - start;
+        if (digits == 0 || digits > maxDigits) {
+            return false;
+        }
+        number = value;
+        return true;
+    }
+
+    private boolean parseBoolean() {
+        if (matchLiteral("true")) {
+            relayState = true;
+            return true;
+        }
+        if (matchLiteral("false")) {
+            relayState = false;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean matchLiteral(String literal) {
+        int n = literal.length();
+        if (end - pos < n) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            if (buf[pos + i] != literal.charAt(i)) {
+                return false;
+            }
+        }
+        pos += n;
+        return true;
+    }
+
+    private boolean keyEquals(int start, int stop, byte[] key) {
+        if (stop - start != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buf[start + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean consume(char c) {
+        if (pos < end && buf[pos] == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (pos < end) {
+            byte b = buf[pos];
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                return;
+            }
+            pos++;
+        }
+    }
+}
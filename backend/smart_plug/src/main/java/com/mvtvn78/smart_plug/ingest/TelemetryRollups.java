@@ -0,0 +1,215 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import com.mvtvn78.smart_plug.model.RollupResolution;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tổng hợp phút/giờ/ngày của power và thời gian relay bật, cộng dồn trong bộ nhớ
+ * và định kỳ upsert vào bảng telemetry_rollup (cộng thêm vào giá trị đã có).
+ * Khoảng relay bật giữa hai mẫu được chia cho từng bucket mà nó đi qua (như EnergyIntegrator chia tại nửa đêm).
+ * Khi database lỗi, phần chưa ghi được giữ lại tối đa {@code ingest.rollup.max-pending} bucket,
+ * vượt quá thì bucket mới bị bỏ (đếm trong {@link #getDropped}).
+ * {@link #add} phải được gọi từ partition của device.
+ */
+@Slf4j
+@Component
+public class TelemetryRollups {
+    private static final String UPSERT_SQL =
+            "insert into telemetry_rollup (device_id, resolution, bucket, sample_count, min_power, max_power, sum_power, relay_on_ms)"
+                    + " values (?, ?, ?, ?, ?, ?, ?, ?)"
+                    + " on conflict (device_id, resolution, bucket) do update set"
+                    + " sample_count = telemetry_rollup.sample_count + excluded.sample_count,"
+                    + " min_power = least(telemetry_rollup.min_power, excluded.min_power),"
+                    + " max_power = greatest(telemetry_rollup.max_power, excluded.max_power),"
+                    + " sum_power = telemetry_rollup.sum_power + excluded.sum_power,"
+                    + " relay_on_ms = telemetry_rollup.relay_on_ms + excluded.relay_on_ms";
+    private static final RollupResolution[] RESOLUTIONS = RollupResolution.values();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    /**
+     * Khoảng cách tối đa giữa hai mẫu để tính thời gian relay bật (mất kết nối lâu hơn thì bỏ qua)
+     */
+    @Value("${ingest.rollup.max-gap-ms:60000}")
+    private long maxGapMs;
+    @Value("${ingest.rollup.max-pending:200000}")
+    private int maxPending;
+
+    private final Map<Key, Aggregate> pending = new ConcurrentHashMap<>();
+    private final Map<Long, LastSample> lastSamples = new ConcurrentHashMap<>();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public TelemetryRollups(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public void add(long deviceId, boolean relayState, int power, long receivedAt) {
+        LastSample last = lastSamples.get(deviceId);
+        if (last == null) {
+            last = new LastSample();
+            lastSamples.put(deviceId, last);
+        } else {
+            long gap = receivedAt - last.time;
+            if (last.relayState && gap > 0 && gap <= maxGapMs) {
+                addRelayOn(deviceId, last.time, receivedAt);
+            }
+        }
+        last.relayState = relayState;
+        last.time = receivedAt;
+
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(receivedAt), ZoneId.systemDefault());
+        for (RollupResolution resolution : RESOLUTIONS) {
+            pending.compute(new Key(deviceId, resolution, resolution.bucketOf(time)), (k, agg) -> {
+                if (agg == null) {
+                    agg = new Aggregate();
+                }
+                agg.add(power);
+                return agg;
+            });
+        }
+    }
+
+    /**
+     * Cộng khoảng relay bật [from, to) vào từng bucket của mỗi độ phân giải, cắt tại ranh giới bucket
+     */
+    private void addRelayOn(long deviceId, long from, long to) {
+        ZoneId zone = ZoneId.systemDefault();
+        for (RollupResolution resolution : RESOLUTIONS) {
+            LocalDateTime bucket = resolution.bucketOf(LocalDateTime.ofInstant(Instant.ofEpochMilli(from), zone));
+            long start = from;
+            while (start < to) {
+                LocalDateTime next = resolution.next(bucket);
+                long end = Math.min(to, next.atZone(zone).toInstant().toEpochMilli());
+                long onMs = end - start;
+                if (onMs > 0) {
+                    // compute: atomic với remove của flush
+                    pending.compute(new Key(deviceId, resolution, bucket), (k, agg) -> {
+                        if (agg == null) {
+                            agg = new Aggregate();
+                        }
+                        agg.relayOnMs += onMs;
+                        return agg;
+                    });
+                }
+                start = Math.max(start, end);
+                bucket = next;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ingest.rollup.flush-interval-ms:10000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Key> keys = new ArrayList<>();
+        List<Aggregate> aggregates = new ArrayList<>();
+        for (Key key : pending.keySet()) {
+            // remove là atomic với compute: mẫu đến sau sẽ tạo aggregate mới và được cộng ở lần flush sau
+            Aggregate agg = pending.remove(key);
+            if (agg != null) {
+                keys.add(key);
+                aggregates.add(agg);
+            }
+        }
+        List<Object[]> rows = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            Key key = keys.get(i);
+            Aggregate agg = aggregates.get(i);
+            // bucket chỉ có thời gian relay bật (không có mẫu): least/greatest bỏ qua null
+            rows.add(new Object[]{key.deviceId(), key.resolution().name(), Timestamp.valueOf(key.bucket()),
+                    agg.count, agg.count == 0 ? null : agg.min, agg.count == 0 ? null : agg.max, agg.sum, agg.relayOnMs});
+        }
+        try {
+            // upsert cộng dồn: cả lô trong một transaction, lỗi giữa chừng thì rollback hết rồi mới gộp lại vào pending (không cộng hai lần)
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPSERT_SQL, rows));
+        } catch (Exception e) {
+            log.warn("Rollup flush of {} buckets failed, retrying later: {}", keys.size(), e.toString());
+            mergeBack(keys, aggregates);
+        }
+    }
+
+    /**
+     * Gộp phần chưa ghi được vào pending; bucket đã có trong pending luôn được gộp (không tăng kích thước),
+     * bucket mới chỉ được giữ khi pending chưa vượt {@code maxPending}.
+     */
+    private void mergeBack(List<Key> keys, List<Aggregate> aggregates) {
+        int lost = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            Key key = keys.get(i);
+            if (pending.size() >= maxPending && !pending.containsKey(key)) {
+                lost++;
+                continue;
+            }
+            pending.merge(key, aggregates.get(i), Aggregate::merge);
+        }
+        if (lost > 0) {
+            dropped.addAndGet(lost);
+            log.warn("Rollup buffer full ({} buckets), dropped {} unsaved buckets", maxPending, lost);
+        }
+    }
+
+    public int getPendingBuckets() {
+        return pending.size();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @PreDestroy
+    public void stop() {
+        flush();
+    }
+
+    private record Key(long deviceId, RollupResolution resolution, LocalDateTime bucket) {
+    }
+
+    private static final class Aggregate {
+        private long count;
+        private int min = Integer.MAX_VALUE;
+        private int max = Integer.MIN_VALUE;
+        private long sum;
+        private long relayOnMs;
+
+        private void add(int power) {
+            count++;
+            min = Math.min(min, power);
+            max = Math.max(max, power);
+            sum += power;
+        }
+
+
+        private Aggregate merge(Aggregate other) {
+            count += other.count;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            sum += other.sum;
+            relayOnMs += other.relayOnMs;
+            return this;
+        }
+    }
+
+    private static final class LastSample {
+        private boolean relayState;
+        private long time;
+    }
+}
@@ -0,0 +1,248 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import com.mvtvn78.smart_plug.model.Telemetry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind cho Telemetry: gom các mẫu vào hàng đợi có giới hạn và ghi
+ * xuống database theo lô (JDBC batch, một transaction mỗi lô), khi đủ
+ * batch-size hoặc hết flush-interval.
+ * Khi hàng đợi đầy hoặc database đang lỗi, mẫu được ghi vào {@link SpillLog}
+ * để {@link SpillReplayer} ghi lại sau; chỉ khi không ghi được ra đĩa
+ * {@link #write(Telemetry)} mới chặn để tạo back-pressure.
+ */
+@Slf4j
+@Component
+public class TelemetryWriter {
+    private static final String INSERT_SQL =
+            "insert into telemetry (device_id, payload, relay_state, power, device_ts, boot_epoch, timestamp)"
+                    + " values (?, ?, ?, ?, ?, ?, ?) on conflict do nothing";
+    private static final long RETRY_DELAY_MS = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SpillLog spillLog;
+    @Value("${telemetry.writer.batch-size:500}")
+    private int batchSize;
+    @Value("${telemetry.writer.flush-interval-ms:200}")
+    private long flushIntervalMs;
+    @Value("${telemetry.writer.queue-capacity:50000}")
+    private int queueCapacity;
+
+    private BlockingQueue<Telemetry> queue;
+    private Thread worker;
+    private volatile boolean running;
+    /**
+     * true khi lần ghi gần nhất thất bại: ghi thẳng ra spill log cho tới khi replay thành công
+     */
+    private volatile boolean degraded;
+    /**
+     * Lô worker đang giữ khi dừng, stop() ghi nốt cùng phần còn lại trong hàng đợi
+     */
+    private volatile List<Telemetry> unflushed = List.of();
+
+    /* =========================
+       COUNTERS
+       ========================= */
+
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong blockedWrites = new AtomicLong();
+    private final AtomicLong spilledRows = new AtomicLong();
+    private volatile int lastFlushSize;
+    private final Timer persistTimer;
+
+    public TelemetryWriter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                           SpillLog spillLog, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.spillLog = spillLog;
+        this.persistTimer = Timer.builder("telemetry.persist")
+                .description("Thời gian ghi một lô telemetry xuống database")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        worker = new Thread(this::run);
+        worker.setName("telemetry-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        worker.interrupt();
+        worker.join(10_000);
+        // Ghi nốt lô worker đang giữ và phần còn lại trong hàng đợi
+        List<Telemetry> rest = new ArrayList<>(unflushed);
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            try {
+                insert(rest);
+            } catch (Exception e) {
+                if (!spill(rest)) {
+                    log.error("Dropped {} telemetry rows on shutdown: {}", rest.size(), e.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Đưa một mẫu vào hàng đợi ghi. Nếu hàng đợi đầy hoặc database đang lỗi thì ghi ra
+     * spill log; chỉ chặn khi cả spill log cũng không ghi được.
+     */
+    public void write(Telemetry telemetry) {
+        if (!degraded && queue.offer(telemetry)) {
+            return;
+        }
+        if (spill(List.of(telemetry))) {
+            return;
+        }
+        blockedWrites.incrementAndGet();
+        try {
+            queue.put(telemetry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Telemetry> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Telemetry first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Telemetry next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flushOrSpill(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        // giữ lại phần chưa ghi để stop() ghi nốt (đưa lại vào hàng đợi có thể mất dòng khi hàng đợi đầy)
+        unflushed = batch;
+    }
+
+    private void flushOrSpill(List<Telemetry> batch) throws InterruptedException {
+        while (true) {
+            try {
+                insert(batch);
+                return;
+            } catch (Exception e) {
+                failedFlushes.incrementAndGet();
+                if (!degraded) {
+                    log.warn("Telemetry flush of {} rows failed, spilling to disk: {}", batch.size(), e.toString());
+                }
+                degraded = true;
+                if (spill(batch)) {
+                    return;
+                }
+                Thread.sleep(RETRY_DELAY_MS);
+            }
+        }
+    }
+
+    private boolean spill(List<Telemetry> batch) {
+        try {
+            spillLog.append(batch);
+            spilledRows.addAndGet(batch.size());
+            return true;
+        } catch (Exception e) {
+            log.error("Could not spill {} telemetry rows: {}", batch.size(), e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * Ghi đồng bộ một lô trong một transaction. Thành công thì thoát chế độ degraded.
+     */
+    public void insert(List<Telemetry> batch) {
+        long start = System.nanoTime();
+        transactionTemplate.executeWithoutResult(status ->
+                jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, t) -> {
+                    ps.setLong(1, t.getDeviceId());
+                    ps.setString(2, t.getRawPayload());
+                    ps.setObject(3, t.getRelayState(), Types.BOOLEAN);
+                    ps.setObject(4, t.getPower(), Types.INTEGER);
+                    ps.setObject(5, t.getDeviceTs(), Types.BIGINT);
+                    ps.setObject(6, t.getBootEpoch(), Types.BIGINT);
+                    ps.setTimestamp(7, Timestamp.valueOf(t.getTimestamp()));
+                }));
+        persistTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        lastFlushSize = batch.size();
+        flushCount.incrementAndGet();
+        flushedRows.addAndGet(batch.size());
+        degraded = false;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    public long getFlushedRows() {
+        return flushedRows.get();
+    }
+
+    public long getFailedFlushes() {
+        return failedFlushes.get();
+    }
+
+    public long getBlockedWrites() {
+        return blockedWrites.get();
+    }
+
+    public long getSpilledRows() {
+        return spilledRows.get();
+    }
+
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    public int getLastFlushSize() {
+        return lastFlushSize;
+    }
+}
@@ -0,0 +1,100 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bảng băm topic -> deviceId (long nguyên thuỷ), địa chỉ mở, dò tuyến tính.
+ * Đọc không khoá và không cấp phát; ghi (tạo device, nạp lúc khởi động) tuần tự hoá bằng synchronized.
+ * Khi đầy quá một nửa thì ghi sang bảng mới gấp đôi rồi mới công bố, nên luồng đọc luôn thấy một bảng nhất quán.
+ */
+class TopicRouteMap {
+    public static final long MISSING = -1L;
+    private static final int MIN_CAPACITY = 1024;
+
+    private static final class Table {
+        final AtomicReferenceArray<String> keys;
+        final AtomicLongArray ids;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new AtomicReferenceArray<>(capacity);
+            ids = new AtomicLongArray(capacity);
+            mask = capacity - 1;
+        }
+    }
+
+    private volatile Table table = new Table(MIN_CAPACITY);
+    /**
+     * Số ô đã dùng, chỉ truy cập khi giữ khoá
+     */
+    private int size;
+
+    public long get(String topic) {
+        Table t = table;
+        int i = slot(topic, t.mask);
+        while (true) {
+            String key = t.keys.get(i);
+            if (key == null) {
+                return MISSING;
+            }
+            if (key.equals(topic)) {
+                return t.ids.get(i);
+            }
+            i = (i + 1) & t.mask;
+        }
+    }
+
+    public synchronized void put(String topic, long deviceId) {
+        Table t = table;
+        if ((size + 1) * 2 > t.keys.length()) {
+            t = resize(t);
+        }
+        if (insert(t, topic, deviceId)) {
+            size++;
+        }
+        table = t;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Ghi id trước rồi mới công bố key (ghi volatile), luồng đọc thấy key thì cũng thấy id.
+     *
+     * @return true nếu dùng ô mới
+     */
+    private static boolean insert(Table t, String topic, long deviceId) {
+        int i = slot(topic, t.mask);
+        while (true) {
+            String key = t.keys.get(i);
+            if (key == null) {
+                t.ids.set(i, deviceId);
+                t.keys.set(i, topic);
+                return true;
+            }
+            if (key.equals(topic)) {
+                t.ids.set(i, deviceId);
+                return false;
+            }
+            i = (i + 1) & t.mask;
+        }
+    }
+
+    private static Table resize(Table old) {
+        Table t = new Table(old.keys.length() * 2);
+        for (int i = 0; i < old.keys.length(); i++) {
+            String key = old.keys.get(i);
+            if (key != null) {
+                insert(t, key, old.ids.get(i));
+            }
+        }
+        return t;
+    }
+
+    private static int slot(String topic, int mask) {
+        int h = topic.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
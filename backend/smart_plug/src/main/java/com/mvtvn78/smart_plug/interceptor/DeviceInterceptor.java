@@ -2,8 +2,8 @@ package com.mvtvn78.smart_plug.interceptor;
 
 import com.mvtvn78.smart_plug.config.JwtService;
 import com.mvtvn78.smart_plug.model.User;
-import com.mvtvn78.smart_plug.repository.UserDeviceRepository;
 import com.mvtvn78.smart_plug.repository.UserRepository;
+import com.mvtvn78.smart_plug.service.DeviceAccessCache;
 import com.mvtvn78.smart_plug.service.UserService;
 import com.mvtvn78.smart_plug.util.CommonUtil;
 import jakarta.servlet.http.HttpServletResponse;
@@ -25,7 +25,7 @@ public class DeviceInterceptor implements HandshakeInterceptor {
     @Autowired
     private UserRepository userRepository;
     @Autowired
-    private UserDeviceRepository userDeviceRepository;
+    private DeviceAccessCache deviceAccessCache;
     @Override
     public boolean beforeHandshake(
             ServerHttpRequest request,
@@ -40,11 +40,7 @@ public class DeviceInterceptor implements HandshakeInterceptor {
 
         String deviceId = queryParams.getFirst("deviceId");
         String token = queryParams.getFirst("token");
-        if (deviceId == null || token == null) {
-            return false;
-        }
-        Long deviceLong =  CommonUtil.parseLongSafe(deviceId);
-        if(deviceLong == null){
+        if (token == null) {
             return false;
         }
         if (jwtTokenUtil.isTokenExpired(token)) {
@@ -55,10 +51,28 @@ public class DeviceInterceptor implements HandshakeInterceptor {
         if (user == null) {
             return false;
         }
-        if(!userDeviceRepository.existsByUser_IdAndDevice_Id(user.getId(),deviceLong)){
-            return false;
+        attributes.put("userName", userName);
+        // deviceId không bắt buộc: không có thì client gửi message subscribe sau khi kết nối
+        if (deviceId != null) {
+            Long deviceLong = CommonUtil.parseLongSafe(deviceId);
+            if (deviceLong == null) {
+                return false;
+            }
+            if (!deviceAccessCache.deviceIdsOf(userName).contains(deviceLong)) {
+                return false;
+            }
+            attributes.put("deviceId", deviceLong.toString());
+        }
+        // text (mặc định) hoặc binary
+        String format = queryParams.getFirst("format");
+        if (format != null) {
+            attributes.put("format", format);
+        }
+        // số lần gửi tối đa mỗi giây, giữa hai lần gửi chỉ giữ mẫu mới nhất
+        Double maxRate = CommonUtil.parseDoubleSafe(queryParams.getFirst("maxRate"));
+        if (maxRate != null) {
+            attributes.put("maxRate", maxRate);
         }
-        attributes.put("deviceId", deviceId);
         return true;
     }
     @Override
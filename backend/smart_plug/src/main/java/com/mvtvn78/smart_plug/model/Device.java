@@ -17,4 +17,18 @@ public class Device {
     private String name;
     private String topicRelay;
     private String topicData;
+    @Enumerated(EnumType.STRING)
+    private StorageMode storageMode;
+    /**
+     * Ngưỡng thay đổi power (W) để lưu mẫu khi storageMode = DEADBAND
+     */
+    private Integer deadbandWatts;
+    /**
+     * Khoảng thời gian tối đa (giây) giữa hai mẫu được lưu khi storageMode = DEADBAND
+     */
+    private Integer heartbeatSeconds;
+    /**
+     * Nhãn lần khởi động gần nhất của device (xem BootEpochTracker), nạp lại khi backend khởi động
+     */
+    private Long bootEpoch;
 }
@@ -0,0 +1,32 @@
+package com.mvtvn78.smart_plug.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDate;
+
+/**
+ * Điện năng tiêu thụ (Wh) của một device trong một ngày/tháng, cộng dồn từ ingest.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@Entity
+@Table(name = "energy_counter", uniqueConstraints = @UniqueConstraint(
+        name = "uk_energy_counter_period",
+        columnNames = {"device_id", "period", "period_start"}
+))
+public class EnergyCounter {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    private Long deviceId;
+    @Enumerated(EnumType.STRING)
+    private EnergyPeriod period;
+    private LocalDate periodStart;
+    private Double energyWh;
+}
@@ -0,0 +1,15 @@
+package com.mvtvn78.smart_plug.model;
+
+import java.time.LocalDate;
+
+public enum EnergyPeriod {
+    DAY,
+    MONTH;
+
+    /**
+     * Ngày bắt đầu kỳ chứa {@code day}
+     */
+    public LocalDate startOf(LocalDate day) {
+        return this == DAY ? day : day.withDayOfMonth(1);
+    }
+}
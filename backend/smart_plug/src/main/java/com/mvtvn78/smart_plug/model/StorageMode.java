@@ -0,0 +1,12 @@
+package com.mvtvn78.smart_plug.model;
+
+public enum StorageMode {
+    /**
+     * Lưu mọi mẫu telemetry
+     */
+    ALL,
+    /**
+     * Chỉ lưu khi power thay đổi quá deadband, relay đổi trạng thái, hoặc quá heartbeat
+     */
+    DEADBAND
+}
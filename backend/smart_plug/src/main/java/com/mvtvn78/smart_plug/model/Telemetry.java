@@ -1,5 +1,6 @@
 package com.mvtvn78.smart_plug.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -12,11 +13,56 @@ import java.time.LocalDateTime;
 @Getter
 @Setter
 @Entity
+@Table(indexes = @Index(
+        name = "idx_telemetry_device_time",
+        columnList = "device_id, timestamp, id"
+))
 public class Telemetry {
+    /**
+     * Bảng telemetry chia partition theo tháng (xem TelemetryPartitionManager),
+     * id lấy từ sequence dùng chung cho mọi partition
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "telemetry_id_seq")
+    @SequenceGenerator(name = "telemetry_id_seq", sequenceName = "telemetry_id_seq", allocationSize = 1)
     private Long id;
     private Long deviceId;
+    /**
+     * Payload gốc, chỉ lưu khi không đúng định dạng của firmware
+     */
     private String payload;
+    private Boolean relayState;
+    /**
+     * Công suất (W)
+     */
+    private Integer power;
+    /**
+     * ts do device gửi lên (ms): thời gian từ lúc device khởi động (esp_timer_get_time), không phải epoch,
+     * về 0 sau mỗi lần khởi động lại nên không dùng làm khoá duy nhất
+     */
+    private Long deviceTs;
+    /**
+     * Nhãn lần khởi động của device (ms, xem BootEpochTracker), cùng device_id và device_ts tạo khoá duy nhất
+     * của từng partition để bỏ message broker gửi lại
+     */
+    @JsonIgnore
+    private Long bootEpoch;
+    @Column(nullable = false)
     private LocalDateTime timestamp = LocalDateTime.now();
+
+    @JsonIgnore
+    public String getRawPayload() {
+        return payload;
+    }
+
+    /**
+     * Payload dạng JSON của firmware cho client: payload gốc nếu có,
+     * ngược lại dựng lại từ các cột đã tách.
+     */
+    public String getPayload() {
+        if (payload != null || relayState == null) {
+            return payload;
+        }
+        return "{\"stateRelay\": " + relayState + ",\"power\": \"" + power + "\",\"ts\": " + deviceTs + "}";
+    }
 }
@@ -0,0 +1,56 @@
+package com.mvtvn78.smart_plug.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Tổng hợp telemetry của một device trong một bucket (phút/giờ/ngày), cập nhật dần từ ingest.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@Entity
+@Table(name = "telemetry_rollup", uniqueConstraints = @UniqueConstraint(
+        name = "uk_telemetry_rollup_bucket",
+        columnNames = {"device_id", "resolution", "bucket"}
+))
+public class TelemetryRollup {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    private Long deviceId;
+    @Enumerated(EnumType.STRING)
+    private RollupResolution resolution;
+    /**
+     * Thời điểm bắt đầu bucket
+     */
+    private LocalDateTime bucket;
+    private Long sampleCount;
+    private Integer minPower;
+    private Integer maxPower;
+    @JsonIgnore
+    private Long sumPower;
+    /**
+     * Thời gian relay bật trong bucket (ms)
+     */
+    @JsonIgnore
+    private Long relayOnMs;
+
+    public Double getAvgPower() {
+        if (sampleCount == null || sampleCount == 0) {
+            return null;
+        }
+        return (double) sumPower / sampleCount;
+    }
+
+    public Long getRelayOnSeconds() {
+        return relayOnMs == null ? null : relayOnMs / 1000;
+    }
+}
@@ -1,10 +1,31 @@
 package com.mvtvn78.smart_plug.repository;
 
+import com.mvtvn78.smart_plug.ingest.DeviceRoute;
 import com.mvtvn78.smart_plug.model.Device;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
 
 public interface DeviceRepository extends JpaRepository<Device, Long> {
     Device findByTopicData(String topicData);
 
     Device findByTopicRelay(String topicRelay);
+
+    /**
+     * topicData không khớp regex (POSIX) của wildcard, tức cần subscribe riêng
+     */
+    @Query(value = "select topic_data from device where topic_data !~ :pattern", nativeQuery = true)
+    List<String> findTopicDataNotMatching(String pattern);
+
+    @Query("select d.topicData from Device d")
+    List<String> findAllTopicData();
+
+    @Query("select new com.mvtvn78.smart_plug.ingest.DeviceRoute(d.id, d.topicData, d.storageMode, d.deadbandWatts, d.heartbeatSeconds, d.bootEpoch)"
+            + " from Device d where d.topicData is not null")
+    List<DeviceRoute> findAllRoutes();
+
+    @Query("select new com.mvtvn78.smart_plug.ingest.DeviceRoute(d.id, d.topicData, d.storageMode, d.deadbandWatts, d.heartbeatSeconds, d.bootEpoch)"
+            + " from Device d where d.topicData = :topicData")
+    DeviceRoute findRouteByTopicData(String topicData);
 }
\ No newline at end of file
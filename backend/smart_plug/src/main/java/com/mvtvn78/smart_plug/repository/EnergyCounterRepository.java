@@ -0,0 +1,29 @@
+package com.mvtvn78.smart_plug.repository;
+
+import com.mvtvn78.smart_plug.model.EnergyCounter;
+import com.mvtvn78.smart_plug.model.EnergyPeriod;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface EnergyCounterRepository extends JpaRepository<EnergyCounter, Long> {
+    Optional<EnergyCounter> findByDeviceIdAndPeriodAndPeriodStart(Long deviceId, EnergyPeriod period, LocalDate periodStart);
+
+    /**
+     * Bộ đếm ngày {@code day} và tháng {@code month} của nhiều device trong một truy vấn
+     */
+    @Query("""
+        select c from EnergyCounter c
+        where c.deviceId in :deviceIds
+          and ((c.period = com.mvtvn78.smart_plug.model.EnergyPeriod.DAY and c.periodStart = :day)
+            or (c.period = com.mvtvn78.smart_plug.model.EnergyPeriod.MONTH and c.periodStart = :month))
+    """)
+    List<EnergyCounter> findDayAndMonth(@Param("deviceIds") Collection<Long> deviceIds,
+                                        @Param("day") LocalDate day,
+                                        @Param("month") LocalDate month);
+}
@@ -1,10 +1,38 @@
 package com.mvtvn78.smart_plug.repository;
 
 import com.mvtvn78.smart_plug.model.Telemetry;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface TelemetryRepository extends JpaRepository<Telemetry, Long> {
-    List<Telemetry> findByDeviceId(Long deviceId);
+    /**
+     * Keyset pagination theo (timestamp, id): lấy các bản ghi sau (afterTs, afterId) và trước {@code to},
+     * dùng index (device_id, timestamp, id) nên chi phí mỗi trang không phụ thuộc độ dài lịch sử.
+     */
+    @Query("select t from Telemetry t where t.deviceId = :deviceId and t.timestamp < :to"
+            + " and (t.timestamp > :afterTs or (t.timestamp = :afterTs and t.id > :afterId))"
+            + " order by t.timestamp, t.id")
+    List<Telemetry> findPage(@Param("deviceId") Long deviceId,
+                             @Param("afterTs") LocalDateTime afterTs,
+                             @Param("afterId") long afterId,
+                             @Param("to") LocalDateTime to,
+                             Limit limit);
+
+    /**
+     * Như {@link #findPage} nhưng mới nhất trước: các bản ghi trước (beforeTs, beforeId) và từ {@code from} trở đi,
+     * đọc ngược trên cùng index
+     */
+    @Query("select t from Telemetry t where t.deviceId = :deviceId and t.timestamp >= :from"
+            + " and (t.timestamp < :beforeTs or (t.timestamp = :beforeTs and t.id < :beforeId))"
+            + " order by t.timestamp desc, t.id desc")
+    List<Telemetry> findPageDesc(@Param("deviceId") Long deviceId,
+                                 @Param("beforeTs") LocalDateTime beforeTs,
+                                 @Param("beforeId") long beforeId,
+                                 @Param("from") LocalDateTime from,
+                                 Limit limit);
 }
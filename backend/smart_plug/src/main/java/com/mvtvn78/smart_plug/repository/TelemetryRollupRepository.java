@@ -0,0 +1,24 @@
+package com.mvtvn78.smart_plug.repository;
+
+import com.mvtvn78.smart_plug.model.RollupResolution;
+import com.mvtvn78.smart_plug.model.TelemetryRollup;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface TelemetryRollupRepository extends JpaRepository<TelemetryRollup, Long> {
+    /**
+     * Các bucket có thời điểm bắt đầu trong (after, to), dùng unique index (device_id, resolution, bucket)
+     */
+    List<TelemetryRollup> findByDeviceIdAndResolutionAndBucketGreaterThanAndBucketLessThanOrderByBucket(
+            Long deviceId, RollupResolution resolution, LocalDateTime after, LocalDateTime to, Limit limit);
+
+    /**
+     * Rollup của nhiều device từ thời điểm {@code from}, một truy vấn cho cả dashboard
+     */
+    List<TelemetryRollup> findByDeviceIdInAndResolutionAndBucketGreaterThanEqualOrderByDeviceIdAscBucketAsc(
+            Collection<Long> deviceIds, RollupResolution resolution, LocalDateTime from);
+}
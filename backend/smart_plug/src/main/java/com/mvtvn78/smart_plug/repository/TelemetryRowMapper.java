@@ -0,0 +1,31 @@
+package com.mvtvn78.smart_plug.repository;
+
+import com.mvtvn78.smart_plug.model.Telemetry;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Đọc Telemetry từ JDBC cho các truy vấn không đi qua JPA (export, chuyển sang kho lạnh).
+ * Cột theo thứ tự {@link #COLUMNS}.
+ */
+public class TelemetryRowMapper implements RowMapper<Telemetry> {
+    public static final String COLUMNS = "id, device_id, payload, relay_state, power, device_ts, timestamp";
+
+    @Override
+    public Telemetry mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return read(rs, new Telemetry());
+    }
+
+    public static Telemetry read(ResultSet rs, Telemetry t) throws SQLException {
+        t.setId(rs.getLong(1));
+        t.setDeviceId(rs.getLong(2));
+        t.setPayload(rs.getString(3));
+        t.setRelayState(rs.getObject(4, Boolean.class));
+        t.setPower(rs.getObject(5, Integer.class));
+        t.setDeviceTs(rs.getObject(6, Long.class));
+        t.setTimestamp(rs.getTimestamp(7).toLocalDateTime());
+        return t;
+    }
+}
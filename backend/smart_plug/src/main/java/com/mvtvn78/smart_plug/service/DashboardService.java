@@ -0,0 +1,86 @@
+package com.mvtvn78.smart_plug.service;
+
+import com.mvtvn78.smart_plug.data.DashboardDevice;
+import com.mvtvn78.smart_plug.ingest.DeviceStateStore;
+import com.mvtvn78.smart_plug.ingest.EnergyIntegrator;
+import com.mvtvn78.smart_plug.model.Device;
+import com.mvtvn78.smart_plug.model.EnergyCounter;
+import com.mvtvn78.smart_plug.model.EnergyPeriod;
+import com.mvtvn78.smart_plug.model.RollupResolution;
+import com.mvtvn78.smart_plug.model.TelemetryRollup;
+import com.mvtvn78.smart_plug.repository.DeviceRepository;
+import com.mvtvn78.smart_plug.repository.EnergyCounterRepository;
+import com.mvtvn78.smart_plug.repository.TelemetryRollupRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dữ liệu dashboard cho tất cả device của user với số truy vấn cố định
+ * (danh sách device, rollup, bộ đếm điện năng), không phụ thuộc số device.
+ * Quyền user -> device lấy từ {@link DeviceAccessCache}, trạng thái hiện tại đọc từ bộ nhớ.
+ * Không dùng read replica vì bộ đếm điện năng phải đọc cùng nguồn với lần flush (xem {@link EnergyService}).
+ */
+@Service
+public class DashboardService {
+    @Autowired
+    private DeviceAccessCache deviceAccessCache;
+    @Autowired
+    private DeviceRepository deviceRepository;
+    @Autowired
+    private TelemetryRollupRepository telemetryRollupRepository;
+    @Autowired
+    private EnergyCounterRepository energyCounterRepository;
+    @Autowired
+    private DeviceStateStore deviceStateStore;
+    @Autowired
+    private EnergyIntegrator energyIntegrator;
+
+    public List<DashboardDevice> getDashboard(int hours) {
+        // user không còn tồn tại -> không có device nào
+        List<Long> ids = new ArrayList<>(deviceAccessCache.currentUserDeviceIds());
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        List<Device> devices = new ArrayList<>(deviceRepository.findAllById(ids));
+        devices.sort(Comparator.comparing(Device::getId));
+
+        LocalDateTime from = RollupResolution.HOUR.bucketOf(LocalDateTime.now().minusHours(hours));
+        Map<Long, List<TelemetryRollup>> recent = new HashMap<>();
+        for (TelemetryRollup rollup : telemetryRollupRepository
+                .findByDeviceIdInAndResolutionAndBucketGreaterThanEqualOrderByDeviceIdAscBucketAsc(ids, RollupResolution.HOUR, from)) {
+            recent.computeIfAbsent(rollup.getDeviceId(), k -> new ArrayList<>()).add(rollup);
+        }
+
+        LocalDate today = LocalDate.now();
+        LocalDate month = EnergyPeriod.MONTH.startOf(today);
+        Map<Long, Double> todayWh = new HashMap<>();
+        Map<Long, Double> monthWh = new HashMap<>();
+        // bộ đếm trong database + phần chưa ghi, không xen giữa một lần flush
+        energyIntegrator.readConsistent(() -> {
+            for (EnergyCounter counter : energyCounterRepository.findDayAndMonth(ids, today, month)) {
+                (counter.getPeriod() == EnergyPeriod.DAY ? todayWh : monthWh).put(counter.getDeviceId(), counter.getEnergyWh());
+            }
+            for (long id : ids) {
+                todayWh.merge(id, energyIntegrator.pendingWh(id, EnergyPeriod.DAY, today), Double::sum);
+                monthWh.merge(id, energyIntegrator.pendingWh(id, EnergyPeriod.MONTH, month), Double::sum);
+            }
+            return null;
+        });
+
+        List<DashboardDevice> result = new ArrayList<>(devices.size());
+        for (Device device : devices) {
+            long id = device.getId();
+            result.add(new DashboardDevice(device, deviceStateStore.get(id), todayWh.get(id) / 1000, monthWh.get(id) / 1000,
+                    recent.getOrDefault(id, List.of())));
+        }
+        return result;
+    }
+}
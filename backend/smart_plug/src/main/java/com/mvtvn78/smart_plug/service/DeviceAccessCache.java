@@ -0,0 +1,94 @@
+package com.mvtvn78.smart_plug.service;
+
+import com.mvtvn78.smart_plug.model.Device;
+import com.mvtvn78.smart_plug.model.User;
+import com.mvtvn78.smart_plug.repository.UserDeviceRepository;
+import com.mvtvn78.smart_plug.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Danh sách deviceId của từng user giữ trong bộ nhớ, để các API đọc nhanh (trạng thái, năng lượng)
+ * kiểm tra quyền mà không truy vấn database mỗi request.
+ * Xoá khi user thêm/bỏ device, nhưng chỉ trên instance xử lý request đó: khi chạy nhiều instance,
+ * instance khác vẫn dùng danh sách cũ tới khi entry hết hạn, tức quyền có thể cũ tối đa {@code device.access.cache-ttl-ms}.
+ * Entry hết hạn được dọn định kỳ; số user giữ trong cache không vượt {@code device.access.cache-max-size}.
+ */
+@Service
+public class DeviceAccessCache {
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private UserDeviceRepository userDeviceRepository;
+    @Value("${device.access.cache-ttl-ms:60000}")
+    private long ttlMs;
+    @Value("${device.access.cache-max-size:10000}")
+    private int maxSize;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * deviceId của user đang đăng nhập
+     */
+    public Set<Long> currentUserDeviceIds() {
+        return deviceIdsOf(SecurityContextHolder.getContext().getAuthentication().getName());
+    }
+
+    public boolean currentUserCanAccess(long deviceId) {
+        return currentUserDeviceIds().contains(deviceId);
+    }
+
+    public Set<Long> deviceIdsOf(String userName) {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(userName);
+        if (entry == null || entry.expiresAt < now) {
+            User user = userRepository.findByUserName(userName);
+            Set<Long> ids = user == null ? Set.of() : userDeviceRepository.findDevicesByUserId(user.getId())
+                    .stream().map(Device::getId).collect(Collectors.toUnmodifiableSet());
+            entry = new Entry(ids, now + ttlMs);
+            if (entries.size() >= maxSize) {
+                purgeExpired();
+                if (entries.size() >= maxSize) {
+                    entries.clear();
+                }
+            }
+            entries.put(userName, entry);
+        }
+        return entry.deviceIds;
+    }
+
+    public void invalidate(String userName) {
+        entries.remove(userName);
+    }
+
+    /**
+     * Bỏ entry đã hết hạn của user không còn gọi API, để cache không lớn dần theo số user từng đăng nhập
+     */
+    @Scheduled(fixedDelayString = "${device.access.cache-ttl-ms:60000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.expiresAt < now);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+        private final Set<Long> deviceIds;
+        private final long expiresAt;
+
+        private Entry(Set<Long> deviceIds, long expiresAt) {
+            this.deviceIds = deviceIds;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.mvtvn78.smart_plug.service;
+
+import com.mvtvn78.smart_plug.data.EnergyUsage;
+import com.mvtvn78.smart_plug.ingest.EnergyIntegrator;
+import com.mvtvn78.smart_plug.model.EnergyCounter;
+import com.mvtvn78.smart_plug.model.EnergyPeriod;
+import com.mvtvn78.smart_plug.repository.EnergyCounterRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+
+@Service
+public class EnergyService {
+    @Autowired
+    private EnergyCounterRepository energyCounterRepository;
+    @Autowired
+    private EnergyIntegrator energyIntegrator;
+
+    /**
+     * Điện năng của device trong ngày {@code day} và trong tháng chứa {@code month}:
+     * hai lần đọc theo khoá cộng phần chưa ghi xuống database (kể cả phần đang flush).
+     * Đọc từ primary, không qua read replica: replica có thể chưa thấy lần flush vừa commit
+     * trong khi phần đó đã rời pending, tổng sẽ bị hụt.
+     */
+    public EnergyUsage getUsage(long deviceId, LocalDate day, LocalDate month) {
+        LocalDate monthStart = EnergyPeriod.MONTH.startOf(month);
+        return new EnergyUsage(deviceId,
+                day, energyWh(deviceId, EnergyPeriod.DAY, day) / 1000,
+                monthStart, energyWh(deviceId, EnergyPeriod.MONTH, monthStart) / 1000);
+    }
+
+    private double energyWh(long deviceId, EnergyPeriod period, LocalDate periodStart) {
+        return energyIntegrator.readConsistent(() -> {
+            double stored = energyCounterRepository.findByDeviceIdAndPeriodAndPeriodStart(deviceId, period, periodStart)
+                    .map(EnergyCounter::getEnergyWh)
+                    .orElse(0d);
+            return stored + energyIntegrator.pendingWh(deviceId, period, periodStart);
+        });
+    }
+}
@@ -1,16 +1,228 @@
 package com.mvtvn78.smart_plug.service;
 
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.MessageChannel;
-import org.springframework.integration.support.MessageBuilder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.integration.mqtt.core.MqttPahoClientFactory;
 import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gửi lệnh điều khiển xuống device qua một pool client MQTT async.
+ * <p>
+ * Topic được gán cố định cho một client theo hash (giữ thứ tự lệnh của từng device),
+ * mỗi client giới hạn số message đang chờ PUBACK bằng một Semaphore.
+ * {@link #publish} trả về future hoàn thành khi broker xác nhận (PUBACK với QoS 1).
+ * Các client kết nối nền lúc khởi động (lỗi thì thử lại sau {@code mqtt.outbound.connect-retry-ms}),
+ * mất kết nối sau đó do automaticReconnect của Paho xử lý; publish không bao giờ chờ kết nối
+ * mà thất bại ngay khi client chưa kết nối.
+ */
+@Slf4j
 @Service
 public class MqttPublisherService {
-    @Autowired
-    private MessageChannel mqttOutboundChannel;
-    public void publish(String topic, String payload) {
-        mqttOutboundChannel.send(MessageBuilder.withPayload(payload)
-        .setHeader("mqtt_topic", topic)
-        .build());
+    private final MqttPahoClientFactory clientFactory;
+    @Value("${mqtt.client.id:spring-boot-client}")
+    private String clientId;
+    @Value("${mqtt.outbound.connections:2}")
+    private int connections;
+    @Value("${mqtt.outbound.max-inflight:100}")
+    private int maxInflight;
+    @Value("${mqtt.outbound.qos:1}")
+    private int qos;
+    @Value("${mqtt.outbound.acquire-timeout-ms:1000}")
+    private long acquireTimeoutMs;
+    @Value("${mqtt.outbound.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+    @Value("${mqtt.outbound.connect-retry-ms:5000}")
+    private long connectRetryMs;
+
+    private IMqttAsyncClient[] clients;
+    private Semaphore[] windows;
+    private ScheduledExecutorService reconnector;
+
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final Timer ackTimer;
+
+    public MqttPublisherService(MqttPahoClientFactory clientFactory, MeterRegistry meterRegistry) {
+        this.clientFactory = clientFactory;
+        this.ackTimer = Timer.builder("mqtt.publish.ack")
+                .description("Thời gian từ lúc publish lệnh tới khi nhận PUBACK")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() throws MqttException {
+        int n = Math.max(1, connections);
+        clients = new IMqttAsyncClient[n];
+        windows = new Semaphore[n];
+        String[] serverUris = clientFactory.getConnectionOptions().getServerURIs();
+        for (int i = 0; i < n; i++) {
+            // client outbound không cần session, id ngẫu nhiên để không trùng giữa các instance
+            String id = clientId + "_out_" + i + "_" + UUID.randomUUID().toString().substring(0, 8);
+            clients[i] = clientFactory.getAsyncClientInstance(serverUris[0], id);
+            windows[i] = new Semaphore(maxInflight);
+        }
+        reconnector = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "mqtt-outbound-connect");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // kết nối nền, broker chưa sẵn sàng không làm chậm hay hỏng startup
+        for (IMqttAsyncClient client : clients) {
+            connect(client);
+        }
+    }
+
+    /**
+     * Kết nối không chặn. automaticReconnect của Paho chỉ áp dụng sau lần kết nối thành công đầu tiên,
+     * nên lần đầu thất bại thì tự lên lịch thử lại.
+     */
+    private void connect(IMqttAsyncClient client) {
+        try {
+            client.connect(connectOptions(), null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken token) {
+                    log.info("MQTT outbound {} connected", client.getClientId());
+                }
+
+                @Override
+                public void onFailure(IMqttToken token, Throwable e) {
+                    log.warn("MQTT outbound {} connect failed, retrying in {} ms: {}",
+                            client.getClientId(), connectRetryMs, e.toString());
+                    retryConnect(client);
+                }
+            });
+        } catch (MqttException e) {
+            log.warn("MQTT outbound {} connect failed, retrying in {} ms: {}",
+                    client.getClientId(), connectRetryMs, e.toString());
+            retryConnect(client);
+        }
+    }
+
+    private void retryConnect(IMqttAsyncClient client) {
+        if (!reconnector.isShutdown()) {
+            reconnector.schedule(() -> connect(client), connectRetryMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public CompletableFuture<Void> publish(String topic, String payload) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        int index = Math.floorMod(topic.hashCode(), clients.length);
+        IMqttAsyncClient client = clients[index];
+        // không chờ kết nối trên thread của request: API trả 503 ngay
+        if (!client.isConnected()) {
+            failed.incrementAndGet();
+            future.completeExceptionally(new IllegalStateException("MQTT outbound not connected: " + client.getClientId()));
+            return future;
+        }
+        Semaphore window = windows[index];
+        try {
+            if (!window.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                rejected.incrementAndGet();
+                future.completeExceptionally(new IllegalStateException("MQTT outbound window full: " + topic));
+                return future;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+            return future;
+        }
+        try {
+            MqttMessage message = new MqttMessage(payload.getBytes(StandardCharsets.UTF_8));
+            message.setQos(qos);
+            long start = System.nanoTime();
+            client.publish(topic, message, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken token) {
+                    window.release();
+                    ackTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    future.complete(null);
+                }
+
+                @Override
+                public void onFailure(IMqttToken token, Throwable e) {
+                    window.release();
+                    failed.incrementAndGet();
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (Exception e) {
+            window.release();
+            failed.incrementAndGet();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private MqttConnectOptions connectOptions() {
+        MqttConnectOptions base = clientFactory.getConnectionOptions();
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setServerURIs(base.getServerURIs());
+        options.setKeepAliveInterval(base.getKeepAliveInterval());
+        options.setConnectionTimeout(base.getConnectionTimeout());
+        options.setUserName(base.getUserName());
+        // setPassword(null) của Paho ném NPE (broker không dùng mật khẩu)
+        if (base.getPassword() != null) {
+            options.setPassword(base.getPassword());
+        }
+        options.setAutomaticReconnect(true);
+        options.setCleanSession(true);
+        // Paho mặc định chỉ cho 10 message chờ ack, nâng lên bằng cửa sổ của pool
+        options.setMaxInflight(maxInflight);
+        return options;
+    }
+
+    public int getConnections() {
+        return clients.length;
+    }
+
+    public int getInFlight() {
+        int inFlight = 0;
+        for (Semaphore window : windows) {
+            inFlight += maxInflight - window.availablePermits();
+        }
+        return inFlight;
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @PreDestroy
+    public void stop() {
+        reconnector.shutdownNow();
+        for (IMqttAsyncClient client : clients) {
+            try {
+                if (client.isConnected()) {
+                    client.disconnect().waitForCompletion(connectTimeoutMs);
+                }
+                client.close();
+            } catch (MqttException e) {
+                log.warn("MQTT outbound {} close failed: {}", client.getClientId(), e.getMessage());
+            }
+        }
     }
 }
@@ -0,0 +1,188 @@
+package com.mvtvn78.smart_plug.service;
+
+import com.mvtvn78.smart_plug.coldstore.ColdStore;
+import com.mvtvn78.smart_plug.model.Telemetry;
+import com.mvtvn78.smart_plug.repository.TelemetryRowMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Xuất telemetry của một device ra NDJSON/CSV theo kiểu streaming: đọc bằng cursor JDBC
+ * (fetch-size, trong transaction chỉ đọc) và ghi từng dòng ra response, bộ nhớ không phụ thuộc số dòng.
+ */
+@Service
+public class TelemetryExportService {
+    private static final String EXPORT_SQL =
+            "select " + TelemetryRowMapper.COLUMNS + " from telemetry"
+                    + " where device_id = ? and timestamp >= ? and timestamp < ? order by timestamp, id";
+    private static final String CSV_HEADER = "id,deviceId,timestamp,relayState,power,deviceTs,payload\n";
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ColdStore coldStore;
+    @Value("${telemetry.export.fetch-size:2000}")
+    private int fetchSize;
+
+    public TelemetryExportService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, ColdStore coldStore) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.coldStore = coldStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // PostgreSQL chỉ dùng cursor (fetch-size) khi tắt autocommit
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    public void export(long deviceId, LocalDateTime from, LocalDateTime to, Format format, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        if (format == Format.CSV) {
+            writer.write(CSV_HEADER);
+        }
+        // dữ liệu cũ trong kho lạnh (đọc từng ngày), sau đó tới dữ liệu trong database
+        for (LocalDate day : coldStore.days(deviceId, from.toLocalDate(), to.toLocalDate())) {
+            for (Telemetry t : coldStore.read(deviceId, day)) {
+                if (!t.getTimestamp().isBefore(from) && t.getTimestamp().isBefore(to)) {
+                    writeRow(writer, format, t);
+                }
+            }
+        }
+        Telemetry row = new Telemetry();
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(EXPORT_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(fetchSize);
+                ps.setLong(1, deviceId);
+                ps.setTimestamp(2, Timestamp.valueOf(from));
+                ps.setTimestamp(3, Timestamp.valueOf(to));
+                return ps;
+            }, rs -> {
+                TelemetryRowMapper.read(rs, row);
+                try {
+                    writeRow(writer, format, row);
+                } catch (IOException e) {
+                    // client ngắt kết nối: dừng đọc và trả cursor
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+
+    private static void writeRow(Writer w, Format format, Telemetry t) throws IOException {
+        if (format == Format.CSV) {
+            writeCsv(w, t);
+        } else {
+            writeJson(w, t);
+        }
+    }
+
+    private static void writeJson(Writer w, Telemetry t) throws IOException {
+        w.write("{\"id\":");
+        w.write(Long.toString(t.getId()));
+        w.write(",\"deviceId\":");
+        w.write(Long.toString(t.getDeviceId()));
+        w.write(",\"relayState\":");
+        w.write(String.valueOf(t.getRelayState()));
+        w.write(",\"power\":");
+        w.write(String.valueOf(t.getPower()));
+        w.write(",\"deviceTs\":");
+        w.write(String.valueOf(t.getDeviceTs()));
+        w.write(",\"payload\":");
+        writeJsonString(w, t.getPayload());
+        w.write(",\"timestamp\":\"");
+        w.write(t.getTimestamp().toString());
+        w.write("\"}\n");
+    }
+
+    private static void writeJsonString(Writer w, String value) throws IOException {
+        if (value == null) {
+            w.write("null");
+            return;
+        }
+        w.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> w.write("\\\"");
+                case '\\' -> w.write("\\\\");
+                case '\n' -> w.write("\\n");
+                case '\r' -> w.write("\\r");
+                case '\t' -> w.write("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        w.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        w.write(c);
+                    }
+                }
+            }
+        }
+        w.write('"');
+    }
+
+    private static void writeCsv(Writer w, Telemetry t) throws IOException {
+        w.write(Long.toString(t.getId()));
+        w.write(',');
+        w.write(Long.toString(t.getDeviceId()));
+        w.write(',');
+        w.write(t.getTimestamp().toString());
+        w.write(',');
+        writeCsvValue(w, t.getRelayState());
+        w.write(',');
+        writeCsvValue(w, t.getPower());
+        w.write(',');
+        writeCsvValue(w, t.getDeviceTs());
+        w.write(',');
+        // chỉ xuất payload gốc (payload khác định dạng firmware), các dòng đúng định dạng đã có cột riêng
+        String raw = t.getRawPayload();
+        if (raw != null) {
+            w.write('"');
+            w.write(raw.replace("\"", "\"\""));
+            w.write('"');
+        }
+        w.write('\n');
+    }
+
+    private static void writeCsvValue(Writer w, Object value) throws IOException {
+        if (value != null) {
+            w.write(value.toString());
+        }
+    }
+}
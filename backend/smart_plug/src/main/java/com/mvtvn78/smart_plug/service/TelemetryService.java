@@ -1,14 +1,24 @@
 package com.mvtvn78.smart_plug.service;
 
+import com.mvtvn78.smart_plug.coldstore.ColdStore;
+import com.mvtvn78.smart_plug.data.RollupPage;
+import com.mvtvn78.smart_plug.data.TelemetryCursor;
+import com.mvtvn78.smart_plug.data.TelemetryPage;
+import com.mvtvn78.smart_plug.model.RollupResolution;
 import com.mvtvn78.smart_plug.model.Telemetry;
+import com.mvtvn78.smart_plug.model.TelemetryRollup;
 import com.mvtvn78.smart_plug.model.User;
 import com.mvtvn78.smart_plug.repository.TelemetryRepository;
+import com.mvtvn78.smart_plug.repository.TelemetryRollupRepository;
 import com.mvtvn78.smart_plug.repository.UserDeviceRepository;
 import com.mvtvn78.smart_plug.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -20,13 +30,113 @@ public class TelemetryService {
     private TelemetryRepository telemetryRepository;
     @Autowired
     private UserDeviceRepository userDeviceRepository;
-    public List<Telemetry> getAllByDeviceId(Long deviceId) {
-        List<Telemetry>  list = new ArrayList<>();
+    @Autowired
+    private TelemetryRollupRepository telemetryRollupRepository;
+    @Autowired
+    private ColdStore coldStore;
+
+    /**
+     * Một trang telemetry trong [from, to), sau vị trí cursor (nếu có).
+     * newestFirst: mới nhất trước, cursor trỏ tới bản ghi cũ nhất của trang trước.
+     * Trả về trang rỗng khi device không thuộc user.
+     * <p>
+     * Kho lạnh chỉ chứa dữ liệu cũ hơn mọi dòng trong database, nên hai nguồn được đọc nối tiếp thay vì gộp:
+     * mới nhất trước thì đọc database, chỉ khi chưa đủ trang mới đọc tiếp kho lạnh từ sau dòng cuối;
+     * cũ nhất trước thì đọc kho lạnh (nếu device có block trong khoảng), chỉ khi hết mới đọc database.
+     */
+    @Transactional(readOnly = true)
+    public TelemetryPage getPage(Long deviceId, LocalDateTime from, LocalDateTime to, TelemetryCursor cursor, int limit,
+                                 boolean newestFirst) {
+        if (!isOwner(deviceId)) {
+            return new TelemetryPage(List.of(), null);
+        }
+        List<Telemetry> items;
+        if (newestFirst) {
+            // không có cursor: bắt đầu từ to (không bao gồm to)
+            LocalDateTime beforeTs = to;
+            long beforeId = 0;
+            if (cursor != null && cursor.getTimestamp().isBefore(to)) {
+                beforeTs = cursor.getTimestamp();
+                beforeId = cursor.getId();
+            }
+            items = telemetryRepository.findPageDesc(deviceId, beforeTs, beforeId, from, Limit.of(limit));
+            if (items.size() < limit && coldStore.hasDays(deviceId, from.toLocalDate(), beforeTs.toLocalDate())) {
+                // database đã hết dòng trong khoảng: đọc tiếp kho lạnh từ sau dòng cuối của database
+                if (!items.isEmpty()) {
+                    Telemetry last = items.get(items.size() - 1);
+                    beforeTs = last.getTimestamp();
+                    beforeId = last.getId();
+                }
+                items = concat(items, coldStore.readPageDesc(deviceId, beforeTs, beforeId, from, limit - items.size()));
+            }
+        } else {
+            // không có cursor: bắt đầu từ from (id > 0 bao gồm mọi bản ghi tại from)
+            LocalDateTime afterTs = from;
+            long afterId = 0;
+            if (cursor != null && !cursor.getTimestamp().isBefore(from)) {
+                afterTs = cursor.getTimestamp();
+                afterId = cursor.getId();
+            }
+            items = coldStore.hasDays(deviceId, afterTs.toLocalDate(), to.toLocalDate())
+                    ? coldStore.readPage(deviceId, afterTs, afterId, to, limit)
+                    : List.of();
+            if (items.size() < limit) {
+                // kho lạnh đã hết: đọc tiếp database từ sau dòng cuối của kho lạnh
+                if (!items.isEmpty()) {
+                    Telemetry last = items.get(items.size() - 1);
+                    afterTs = last.getTimestamp();
+                    afterId = last.getId();
+                }
+                items = concat(items, telemetryRepository.findPage(deviceId, afterTs, afterId, to, Limit.of(limit - items.size())));
+            }
+        }
+        String nextCursor = null;
+        if (items.size() == limit) {
+            Telemetry last = items.get(items.size() - 1);
+            nextCursor = new TelemetryCursor(last.getTimestamp(), last.getId()).encode();
+        }
+        return new TelemetryPage(items, nextCursor);
+    }
+
+    /**
+     * Một trang rollup theo resolution, các bucket bắt đầu trong [from, to) (from được làm tròn xuống đầu bucket).
+     * Cursor chỉ dùng timestamp vì bucket là duy nhất theo device và resolution.
+     */
+    @Transactional(readOnly = true)
+    public RollupPage getRollupPage(Long deviceId, RollupResolution resolution, LocalDateTime from, LocalDateTime to,
+                                    TelemetryCursor cursor, int limit) {
+        if (!isOwner(deviceId)) {
+            return new RollupPage(List.of(), null);
+        }
+        // lớn hơn (after) nên lùi 1 nano để bao gồm bucket đầu tiên
+        LocalDateTime after = resolution.bucketOf(from).minusNanos(1);
+        if (cursor != null && cursor.getTimestamp().isAfter(after)) {
+            after = cursor.getTimestamp();
+        }
+        List<TelemetryRollup> items = telemetryRollupRepository
+                .findByDeviceIdAndResolutionAndBucketGreaterThanAndBucketLessThanOrderByBucket(
+                        deviceId, resolution, after, to, Limit.of(limit));
+        String nextCursor = null;
+        if (items.size() == limit) {
+            TelemetryRollup last = items.get(items.size() - 1);
+            nextCursor = new TelemetryCursor(last.getBucket(), last.getId()).encode();
+        }
+        return new RollupPage(items, nextCursor);
+    }
+
+    private static List<Telemetry> concat(List<Telemetry> first, List<Telemetry> second) {
+        if (first.isEmpty()) {
+            return second;
+        }
+        List<Telemetry> all = new ArrayList<>(first.size() + second.size());
+        all.addAll(first);
+        all.addAll(second);
+        return all;
+    }
+
+    public boolean isOwner(Long deviceId) {
         String userName = SecurityContextHolder.getContext().getAuthentication().getName();
         User user = userRepository.findByUserName(userName);
-        if(userDeviceRepository.existsByUser_IdAndDevice_Id(user.getId(), deviceId)){
-            list = telemetryRepository.findByDeviceId(deviceId);
-        }
-        return list;
+        return userDeviceRepository.existsByUser_IdAndDevice_Id(user.getId(), deviceId);
     }
 }
@@ -26,6 +26,8 @@ public class UserDeviceService {
     private UserRepository userRepository;
     @Autowired
     private DeviceRepository deviceRepository;
+    @Autowired
+    private DeviceAccessCache deviceAccessCache;
     @Transactional(rollbackFor = Exception.class)
     public ServiceResponse addDevice(UserDeviceRequest request) {
         HashMap<String, String> result = new HashMap<>();
@@ -44,6 +46,7 @@ public class UserDeviceService {
         userDevice.setUser(user);
         userDevice.setDevice(device);
         userDeviceRepository.save(userDevice);
+        deviceAccessCache.invalidate(userName);
         result.put("message", "Device added");
         return new ServiceResponse(HttpStatus.OK.value(),result);
     }
@@ -55,6 +58,7 @@ public class UserDeviceService {
         Long deviceId = request.getDeviceId();
         HashMap<String, String> result = new HashMap<>();
         long remove = userDeviceRepository.deleteByUser_IdAndDevice_Id(userId, deviceId);
+        deviceAccessCache.invalidate(userName);
         if(remove > 0) {
             result.put("message", "Device removed successfully");
             return new ServiceResponse(HttpStatus.OK.value(), result);
@@ -73,6 +77,7 @@ public class UserDeviceService {
         result.put("message", "Device not assigned to user");
         return new ServiceResponse(HttpStatus.NOT_FOUND.value(), result);
     }
+    @Transactional(readOnly = true)
     public List<Device> getListOfDevices() {
         String userName = SecurityContextHolder.getContext().getAuthentication().getName();
         User user = userRepository.findByUserName(userName);
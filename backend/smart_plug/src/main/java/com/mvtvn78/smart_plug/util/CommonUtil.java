@@ -12,5 +12,15 @@ public class CommonUtil {
             return null;
         }
     }
+    public static Double parseDoubleSafe(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
 
 }
@@ -0,0 +1,33 @@
+package com.mvtvn78.smart_plug.ws;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.util.List;
+
+/**
+ * Bắt tay WebSocket chỉ nhận extension permessage-deflate (nén từng message) khi client đề nghị.
+ * Tắt bằng {@code ws.permessage-deflate=false} khi CPU quan trọng hơn băng thông.
+ */
+public class DeflateHandshakeHandler extends DefaultHandshakeHandler {
+    private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+    private final boolean deflate;
+
+    public DeflateHandshakeHandler(boolean deflate) {
+        this.deflate = deflate;
+    }
+
+    @Override
+    protected List<WebSocketExtension> filterRequestedExtensions(ServerHttpRequest request,
+                                                                 List<WebSocketExtension> requestedExtensions,
+                                                                 List<WebSocketExtension> supportedExtensions) {
+        if (!deflate) {
+            return List.of();
+        }
+        return super.filterRequestedExtensions(request, requestedExtensions, supportedExtensions).stream()
+                .filter(extension -> PERMESSAGE_DEFLATE.equalsIgnoreCase(extension.getName()))
+                .toList();
+    }
+}
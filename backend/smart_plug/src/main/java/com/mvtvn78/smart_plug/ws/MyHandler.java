@@ -1,15 +1,27 @@
 package com.mvtvn78.smart_plug.ws;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.mvtvn78.smart_plug.service.DeviceAccessCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 @Slf4j
 @RequiredArgsConstructor
 public class MyHandler extends TextWebSocketHandler {
+    private static final Gson GSON = new Gson();
     private final SessionManager sessionManager;
+    private final DeviceAccessCache deviceAccessCache;
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         sessionManager.addSession(session);
@@ -27,8 +39,50 @@ public class MyHandler extends TextWebSocketHandler {
             Throwable exception) {
         sessionManager.removeSession(session);
     }
-//    @Override
-//    public void handleTextMessage(WebSocketSession session, TextMessage message) throws IOException {
-//        log.info("Test message {}", message.toString());
-//    }
-}
\ No newline at end of file
+    /**
+     * subscribe/unsubscribe nhiều device trên cùng một kết nối; chỉ nhận device thuộc user đã xác thực lúc bắt tay
+     */
+    @Override
+    public void handleTextMessage(WebSocketSession session, TextMessage message) {
+        WsRequest request;
+        try {
+            request = GSON.fromJson(message.getPayload(), WsRequest.class);
+        } catch (JsonParseException e) {
+            request = null;
+        }
+        if (request == null || request.getAction() == null || request.getDeviceIds() == null) {
+            sessionManager.reply(session, GSON.toJson(Map.of("type", "error", "message", "Invalid message")));
+            return;
+        }
+        List<Long> deviceIds = request.getDeviceIds().stream().filter(Objects::nonNull).distinct().toList();
+        Map<String, Object> result = new LinkedHashMap<>();
+        switch (request.getAction()) {
+            case WsRequest.SUBSCRIBE -> {
+                String userName = (String) session.getAttributes().get("userName");
+                Set<Long> owned = deviceAccessCache.deviceIdsOf(userName);
+                List<Long> accepted = new ArrayList<>();
+                List<Long> rejected = new ArrayList<>();
+                for (Long deviceId : deviceIds) {
+                    if (owned.contains(deviceId) && sessionManager.subscribe(session, deviceId.toString())) {
+                        accepted.add(deviceId);
+                    } else {
+                        rejected.add(deviceId);
+                    }
+                }
+                result.put("type", "subscribed");
+                result.put("deviceIds", accepted);
+                result.put("rejected", rejected);
+            }
+            case WsRequest.UNSUBSCRIBE -> {
+                deviceIds.forEach(deviceId -> sessionManager.unsubscribe(session, deviceId.toString()));
+                result.put("type", "unsubscribed");
+                result.put("deviceIds", deviceIds);
+            }
+            default -> {
+                result.put("type", "error");
+                result.put("message", "Unknown action: " + request.getAction());
+            }
+        }
+        sessionManager.reply(session, GSON.toJson(result));
+    }
+}
@@ -1,39 +1,171 @@
 package com.mvtvn78.smart_plug.ws;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.websocket.Session;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
 
-import java.io.IOException;
+import java.util.EnumMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+@Slf4j
 @Component
 public class SessionManager {
+    private static final String BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
 
     /**
-     * deviceId -> Set<WebSocketSession>
+     * deviceId -> Set<SessionOutbox> (các session đang subscribe device)
      */
-    private final Map<String, Set<WebSocketSession>> deviceSessions =
+    private final Map<String, Set<SessionOutbox>> deviceSessions =
             new ConcurrentHashMap<>();
+    /**
+     * sessionId -> SessionOutbox
+     */
+    private final Map<String, SessionOutbox> outboxes = new ConcurrentHashMap<>();
+    private final Map<SessionOutbox.EvictReason, Counter> evicted = new EnumMap<>(SessionOutbox.EvictReason.class);
+
+    /**
+     * Giới hạn số byte chờ gửi của mỗi session, vượt quá thì session bị đóng
+     */
+    @Value("${ws.send.buffer-size-limit:524288}")
+    private long bufferSizeLimit;
+    /**
+     * Thời gian tối đa của một lần gửi, quá thì session bị đóng
+     */
+    @Value("${ws.send.time-limit-ms:10000}")
+    private long sendTimeLimitMs;
+    /**
+     * Tần suất tối đa (lần/giây) mặc định cho session không khai báo maxRate, 0 = gửi mọi mẫu
+     */
+    @Value("${ws.conflation.default-max-rate:0}")
+    private double defaultMaxRate;
+    /**
+     * Trần của maxRate client khai báo, 0 = không giới hạn
+     */
+    @Value("${ws.conflation.max-rate-limit:0}")
+    private double maxRateLimit;
+
+    private final ExecutorService sendExecutor;
+    private final ExecutorService closeExecutor;
+    private final ScheduledExecutorService flushScheduler;
+    private final Counter conflated;
+
+    public SessionManager(MeterRegistry meterRegistry) {
+        // sendMessage của Tomcat block tới khi client nhận: pool không giới hạn để một session bị treo
+        // không giữ luồng của session khác. Luồng chỉ sống trong lúc session còn message chờ gửi,
+        // session treo bị checkSendTime loại và Tomcat bỏ lần gửi sau ws.send.time-limit-ms
+        this.sendExecutor = Executors.newCachedThreadPool(daemonThreads("ws-send-"));
+        // đóng session có thể block khi client chậm, không dùng chung luồng gửi
+        this.closeExecutor = Executors.newCachedThreadPool(daemonThreads("ws-close-"));
+        // flush chỉ đưa message vào hàng đợi gửi, một luồng là đủ
+        this.flushScheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("ws-flush-"));
+        this.conflated = Counter.builder("ws.send.conflated")
+                .description("Số mẫu telemetry bị ghi đè bởi mẫu mới hơn trước khi gửi (session giới hạn tần suất)")
+                .register(meterRegistry);
+        Gauge.builder("ws.sessions.active", outboxes, Map::size)
+                .description("Tổng số session WebSocket đang mở")
+                .register(meterRegistry);
+        // không gắn tag theo device: số series phải cố định dù có bao nhiêu device
+        Gauge.builder("ws.subscriptions", outboxes,
+                        m -> m.values().stream().mapToInt(outbox -> outbox.getDevices().size()).sum())
+                .description("Tổng số cặp session-device đang subscribe")
+                .register(meterRegistry);
+        Gauge.builder("ws.devices.watched", deviceSessions, Map::size)
+                .description("Số device đang có ít nhất một session subscribe")
+                .register(meterRegistry);
+        Gauge.builder("ws.send.buffered", outboxes,
+                        m -> m.values().stream().mapToLong(SessionOutbox::getBufferedBytes).sum())
+                .baseUnit("bytes")
+                .description("Tổng số byte đang chờ gửi tới các session WebSocket")
+                .register(meterRegistry);
+        for (SessionOutbox.EvictReason reason : SessionOutbox.EvictReason.values()) {
+            evicted.put(reason, Counter.builder("ws.sessions.evicted")
+                    .description("Số session WebSocket bị đóng vì client không nhận kịp")
+                    .tag("reason", reason.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
 
     /* =========================
        CONNECT
        ========================= */
 
     public void addSession(WebSocketSession session) {
+        limitBlockingSend(session);
+        WsFormat format = WsFormat.of((String) session.getAttributes().get("format"));
+        SessionOutbox outbox = new SessionOutbox(session, format, sendExecutor, bufferSizeLimit, this::evict,
+                flushScheduler, maxRateOf(session), conflated);
+        outboxes.put(session.getId(), outbox);
+        log("➕ CONNECT", null, session);
+        // kết nối kiểu cũ: một device chọn lúc bắt tay
         String deviceId = (String) session.getAttributes().get("deviceId");
-        if (deviceId == null ) {
-            return; // hoặc throw exception
+        if (deviceId != null) {
+            subscribe(session, deviceId);
+        }
+    }
+
+    /* =========================
+       SUBSCRIBE
+       ========================= */
+
+    /**
+     * Thêm device vào danh sách nhận telemetry của session (quyền đã được kiểm tra trước đó)
+     */
+    public boolean subscribe(WebSocketSession session, String deviceId) {
+        SessionOutbox outbox = outboxes.get(session.getId());
+        if (outbox == null) {
+            return false;
+        }
+        if (!outbox.getDevices().add(deviceId)) {
+            return true;
+        }
+        // tạo Set nếu chưa có; thêm trong compute để không đua với lúc xoá Set rỗng
+        deviceSessions.compute(deviceId, (k, sessions) -> {
+            Set<SessionOutbox> result = sessions != null ? sessions : ConcurrentHashMap.newKeySet();
+            result.add(outbox);
+            return result;
+        });
+        log("➕ SUBSCRIBE", deviceId, session);
+        return true;
+    }
+
+    public void unsubscribe(WebSocketSession session, String deviceId) {
+        SessionOutbox outbox = outboxes.get(session.getId());
+        if (outbox == null || !outbox.getDevices().remove(deviceId)) {
+            return;
         }
-        // tạo Set nếu chưa có (thread-safe)
-        deviceSessions
-                .computeIfAbsent(deviceId,
-                        k -> ConcurrentHashMap.newKeySet())
-                .add(session);
+        outbox.discard(deviceId);
+        removeFromDevice(deviceId, outbox);
+        log("➖ UNSUBSCRIBE", deviceId, session);
+    }
 
-        log("➕ CONNECT", deviceId, session);
+    /**
+     * Gửi phản hồi (subscribe/unsubscribe, lỗi) qua hàng đợi của session
+     */
+    public void reply(WebSocketSession session, String message) {
+        SessionOutbox outbox = outboxes.get(session.getId());
+        if (outbox != null) {
+            outbox.offer(new TextMessage(message));
+        }
     }
 
     /* =========================
@@ -41,40 +173,50 @@ public class SessionManager {
        ========================= */
 
     public void removeSession(WebSocketSession session) {
-        String deviceId = (String) session.getAttributes().get("deviceId");
+        SessionOutbox outbox = outboxes.remove(session.getId());
 
-        if (deviceId == null) return;
+        if (outbox == null) return;
 
-        Set<WebSocketSession> sessions =
-                deviceSessions.get(deviceId);
+        outbox.detach();
+        for (String deviceId : outbox.getDevices()) {
+            removeFromDevice(deviceId, outbox);
+        }
 
-        if (sessions != null) {
-            sessions.remove(session);
+        log("➖ DISCONNECT", null, session);
+    }
 
+    private void removeFromDevice(String deviceId, SessionOutbox outbox) {
+        deviceSessions.computeIfPresent(deviceId, (k, sessions) -> {
+            sessions.remove(outbox);
             // nếu device không còn session nào → cleanup
-            if (sessions.isEmpty()) {
-                deviceSessions.remove(deviceId);
-            }
-        }
-
-        log("➖ DISCONNECT", deviceId, session);
+            return sessions.isEmpty() ? null : sessions;
+        });
     }
 
     /* =========================
        SEND MESSAGE
        ========================= */
 
-    public void sendToDevice(String deviceId, String message)
-            throws IOException {
+    public boolean hasSessions(String deviceId) {
+        Set<SessionOutbox> sessions = deviceSessions.get(deviceId);
+        return sessions != null && !sessions.isEmpty();
+    }
 
-        Set<WebSocketSession> sessions =
+    /**
+     * Đưa frame vào hàng đợi gửi của từng session, không chờ gửi xong.
+     * Mỗi định dạng được mã hoá một lần và dùng chung cho mọi session.
+     */
+    public void sendToDevice(String deviceId, TelemetryFrame frame) {
+
+        Set<SessionOutbox> sessions =
                 deviceSessions.get(deviceId);
 
         if (sessions == null) return;
 
-        for (WebSocketSession session : sessions) {
-            if (session.isOpen()) {
-                session.sendMessage(new TextMessage(message));
+        for (SessionOutbox outbox : sessions) {
+            WebSocketMessage<?> message = frame.encode(outbox.getFormat());
+            if (message != null) {
+                outbox.offer(deviceId, message);
             }
         }
     }
@@ -83,12 +225,65 @@ public class SessionManager {
        BROADCAST ALL DEVICES
        ========================= */
 
-    public void broadcast(String message) throws IOException {
-        for (Set<WebSocketSession> sessions : deviceSessions.values()) {
-            for (WebSocketSession session : sessions) {
-                if (session.isOpen()) {
-                    session.sendMessage(new TextMessage(message));
-                }
+    public void broadcast(String message) {
+        TextMessage textMessage = new TextMessage(message);
+        for (SessionOutbox outbox : outboxes.values()) {
+            outbox.offer(textMessage);
+        }
+    }
+
+    /* =========================
+       SLOW CONSUMER
+       ========================= */
+
+    /**
+     * Đóng các session có lần gửi đang chạy quá ws.send.time-limit-ms
+     */
+    @Scheduled(fixedDelayString = "${ws.send.check-interval-ms:1000}")
+    public void checkSendTime() {
+        long now = System.nanoTime();
+        long limit = TimeUnit.MILLISECONDS.toNanos(sendTimeLimitMs);
+        for (SessionOutbox outbox : outboxes.values()) {
+            if (outbox.isSendStuck(now, limit)) {
+                outbox.evict(SessionOutbox.EvictReason.TIME);
+            }
+        }
+    }
+
+    /**
+     * maxRate client khai báo khi bắt tay (lần/giây), giới hạn bởi ws.conflation.max-rate-limit
+     */
+    private double maxRateOf(WebSocketSession session) {
+        Object requested = session.getAttributes().get("maxRate");
+        double rate = requested instanceof Double value && value > 0 ? value : defaultMaxRate;
+        if (maxRateLimit > 0 && (rate <= 0 || rate > maxRateLimit)) {
+            rate = maxRateLimit;
+        }
+        return rate;
+    }
+
+    private void evict(SessionOutbox outbox, SessionOutbox.EvictReason reason) {
+        WebSocketSession session = outbox.getSession();
+        evicted.get(reason).increment();
+        log.warn("Evicting slow WebSocket session | session={} | reason={} | buffered={} bytes",
+                session.getId(), reason, outbox.getBufferedBytes());
+        removeSession(session);
+        try {
+            closeExecutor.execute(() -> outbox.close(CloseStatus.SESSION_NOT_RELIABLE));
+        } catch (RejectedExecutionException e) {
+            // đang dừng: container tự đóng các session
+            log.debug("Skipping close of evicted session {} during shutdown", session.getId());
+        }
+    }
+
+    /**
+     * Giới hạn thời gian Tomcat chờ một lần gửi (mặc định 20s) bằng ws.send.time-limit-ms
+     */
+    private void limitBlockingSend(WebSocketSession session) {
+        if (session instanceof NativeWebSocketSession nativeSession) {
+            Session endpoint = nativeSession.getNativeSession(Session.class);
+            if (endpoint != null) {
+                endpoint.getUserProperties().put(BLOCKING_SEND_TIMEOUT, sendTimeLimitMs);
             }
         }
     }
@@ -98,24 +293,37 @@ public class SessionManager {
        ========================= */
 
     public void cleanup() {
-        deviceSessions.forEach((deviceId, sessions) -> {
-            sessions.removeIf(s -> !s.isOpen());
-            if (sessions.isEmpty()) {
-                deviceSessions.remove(deviceId);
+        outboxes.values().forEach(outbox -> {
+            if (!outbox.getSession().isOpen()) {
+                removeSession(outbox.getSession());
             }
         });
     }
 
+    @PreDestroy
+    public void stop() {
+        // dừng gửi trước khi huỷ các luồng: lần gửi bị ngắt không bị tính là loại bỏ ERROR
+        outboxes.values().forEach(SessionOutbox::detach);
+        flushScheduler.shutdownNow();
+        sendExecutor.shutdownNow();
+        closeExecutor.shutdownNow();
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger index = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName(prefix + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
     /* =========================
        LOG
        ========================= */
 
     private void log(String action, String deviceId, WebSocketSession session) {
-        System.out.printf(
-                "%s | device=%s | session=%s%n",
-                action,
-                deviceId,
-                session.getId()
-        );
-    }
-}
\ No newline at end of file
+        log.debug("{} | device={} | session={}", action, deviceId, session.getId());
+    }
+}
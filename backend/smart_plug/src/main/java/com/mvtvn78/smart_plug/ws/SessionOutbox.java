@@ -0,0 +1,218 @@
+package com.mvtvn78.smart_plug.ws;
+
+import io.micrometer.core.instrument.Counter;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Hàng đợi gửi riêng của một session WebSocket.
+ * <p>
+ * {@link #offer} chỉ đưa message vào hàng đợi (không block), một task trên executor gửi lần lượt.
+ * Mỗi session có tối đa một task gửi tại một thời điểm nên thứ tự message được giữ nguyên.
+ * Session bị loại khi số byte chờ gửi vượt giới hạn, khi một lần gửi quá thời gian cho phép
+ * (do {@link SessionManager} kiểm tra định kỳ) hoặc khi gửi lỗi.
+ * <p>
+ * Khi session giới hạn tần suất (maxRate > 0), telemetry được gộp: giữa hai lần flush chỉ giữ
+ * giá trị mới nhất của mỗi device, giá trị cũ hơn bị ghi đè.
+ */
+@Slf4j
+class SessionOutbox {
+    enum EvictReason { BUFFER, TIME, ERROR }
+
+    @Getter
+    private final WebSocketSession session;
+    @Getter
+    private final WsFormat format;
+    /**
+     * Các device session đang subscribe
+     */
+    @Getter
+    private final Set<String> devices = ConcurrentHashMap.newKeySet();
+    private final Executor executor;
+    private final long bufferSizeLimit;
+    private final BiConsumer<SessionOutbox, EvictReason> onEvict;
+    private final ScheduledExecutorService scheduler;
+    /**
+     * Khoảng cách tối thiểu giữa hai lần flush (nano), 0 = gửi mọi message
+     */
+    private final long flushIntervalNanos;
+    private final Counter conflated;
+
+    private final Queue<WebSocketMessage<?>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    /**
+     * Thời điểm bắt đầu lần gửi đang chạy (nanoTime), 0 khi không gửi
+     */
+    private volatile long sendStartNanos;
+
+    /**
+     * deviceId -> message mới nhất chưa flush (chỉ dùng khi gộp)
+     */
+    private final Map<String, WebSocketMessage<?>> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private volatile long lastFlushNanos;
+
+    SessionOutbox(WebSocketSession session, WsFormat format, Executor executor, long bufferSizeLimit,
+                  BiConsumer<SessionOutbox, EvictReason> onEvict,
+                  ScheduledExecutorService scheduler, double maxRate, Counter conflated) {
+        this.session = session;
+        this.format = format;
+        this.executor = executor;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.onEvict = onEvict;
+        this.scheduler = scheduler;
+        this.flushIntervalNanos = maxRate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / maxRate) : 0;
+        this.conflated = conflated;
+        this.lastFlushNanos = System.nanoTime() - flushIntervalNanos;
+    }
+
+    /**
+     * Telemetry của một device; gộp theo device khi session giới hạn tần suất
+     */
+    void offer(String deviceId, WebSocketMessage<?> message) {
+        if (flushIntervalNanos == 0) {
+            offer(message);
+            return;
+        }
+        if (closed.get()) {
+            return;
+        }
+        if (pending.put(deviceId, message) != null) {
+            conflated.increment();
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            long delay = Math.max(0, lastFlushNanos + flushIntervalNanos - System.nanoTime());
+            scheduler.schedule(this::flush, delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void flush() {
+        lastFlushNanos = System.nanoTime();
+        flushScheduled.set(false);
+        // giá trị đến trong lúc flush sẽ được lần flush kế tiếp gửi (hoặc đã được gửi ngay ở đây)
+        for (String deviceId : pending.keySet()) {
+            WebSocketMessage<?> message = pending.remove(deviceId);
+            if (message != null) {
+                offer(message);
+            }
+        }
+    }
+
+    /**
+     * Bỏ giá trị đang chờ flush của device (khi unsubscribe)
+     */
+    void discard(String deviceId) {
+        pending.remove(deviceId);
+    }
+
+    /**
+     * Đưa thẳng vào hàng đợi gửi, không gộp
+     */
+    void offer(WebSocketMessage<?> message) {
+        if (closed.get()) {
+            return;
+        }
+        if (bufferedBytes.addAndGet(message.getPayloadLength()) > bufferSizeLimit) {
+            evict(EvictReason.BUFFER);
+            return;
+        }
+        queue.add(message);
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        while (!closed.get()) {
+            WebSocketMessage<?> message = queue.poll();
+            if (message == null) {
+                draining.set(false);
+                // message đến sau poll nhưng trước khi bỏ cờ: tự tiếp tục
+                if (queue.isEmpty() || !draining.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+            sendStartNanos = System.nanoTime();
+            try {
+                session.sendMessage(message instanceof BinaryMessage binary
+                        // buffer dùng chung giữa các session, gửi qua bản duplicate để không đổi vị trí đọc
+                        ? new BinaryMessage(binary.getPayload().duplicate(), binary.isLast())
+                        : message);
+            } catch (Exception e) {
+                log.debug("WebSocket send failed | session={} | {}", session.getId(), e.getMessage());
+                // session đã ngắt kết nối bình thường (detach) thì gửi lỗi không phải là loại bỏ
+                if (!closed.get()) {
+                    evict(EvictReason.ERROR);
+                }
+                return;
+            } finally {
+                sendStartNanos = 0;
+            }
+            bufferedBytes.addAndGet(-message.getPayloadLength());
+        }
+    }
+
+    /**
+     * true khi lần gửi hiện tại đã chạy lâu hơn limitNanos
+     */
+    boolean isSendStuck(long now, long limitNanos) {
+        long start = sendStartNanos;
+        return start != 0 && now - start > limitNanos;
+    }
+
+    long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    void evict(EvictReason reason) {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        queue.clear();
+        pending.clear();
+        onEvict.accept(this, reason);
+    }
+
+    /**
+     * Ngừng gửi khi session đã ngắt kết nối (client đóng, server dừng): bỏ message đang chờ,
+     * lần gửi đang chạy kết thúc mà không bị tính là loại bỏ.
+     */
+    void detach() {
+        closed.set(true);
+        queue.clear();
+        pending.clear();
+    }
+
+    /**
+     * Đóng session (gọi ngoài luồng ingest vì có thể block khi client chậm)
+     */
+    void close(CloseStatus status) {
+        detach();
+        try {
+            if (session.isOpen()) {
+                session.close(status);
+            }
+        } catch (Exception e) {
+            log.debug("WebSocket close failed | session={} | {}", session.getId(), e.getMessage());
+        }
+    }
+}
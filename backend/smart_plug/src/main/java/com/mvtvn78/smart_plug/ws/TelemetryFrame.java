@@ -0,0 +1,93 @@
+package com.mvtvn78.smart_plug.ws;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Một mẫu telemetry gửi qua WebSocket, mã hoá một lần cho mọi session nhận cùng định dạng.
+ * <p>
+ * Text: JSON chuẩn hoá {@code {"deviceId":4,"stateRelay":true,"power":"130","ts":133055,"receivedAt":1766545224888}}
+ * (power giữ kiểu chuỗi như firmware để client cũ không phải đổi).
+ * Binary ({@link #BINARY_SIZE} byte, big-endian): deviceId int64, receivedAt int64, ts int64, power int32, stateRelay uint8.
+ * Mỗi định dạng chỉ được tạo khi có session cần tới; frame chỉ dùng trên luồng gọi {@link SessionManager#sendToDevice}.
+ * Các session dùng chung buffer binary, mỗi lần gửi đọc qua một bản duplicate (vị trí đọc riêng).
+ */
+public class TelemetryFrame {
+    public static final int BINARY_SIZE = 29;
+
+    private final long deviceId;
+    private final boolean relayState;
+    private final int power;
+    private final long deviceTs;
+    private final long receivedAt;
+    /**
+     * Payload gốc khi firmware gửi sai định dạng (chỉ gửi cho session dạng text)
+     */
+    private final String raw;
+    private TextMessage text;
+    private BinaryMessage binary;
+
+    public TelemetryFrame(long deviceId, boolean relayState, int power, long deviceTs, long receivedAt) {
+        this.deviceId = deviceId;
+        this.relayState = relayState;
+        this.power = power;
+        this.deviceTs = deviceTs;
+        this.receivedAt = receivedAt;
+        this.raw = null;
+    }
+
+    private TelemetryFrame(String raw) {
+        this.deviceId = 0;
+        this.relayState = false;
+        this.power = 0;
+        this.deviceTs = 0;
+        this.receivedAt = 0;
+        this.raw = raw;
+    }
+
+    /**
+     * Frame chứa nguyên payload không parse được
+     */
+    public static TelemetryFrame raw(String payload) {
+        return new TelemetryFrame(payload);
+    }
+
+    /**
+     * Message cho session theo định dạng, null khi không có dữ liệu ở định dạng đó
+     */
+    WebSocketMessage<?> encode(WsFormat format) {
+        return format == WsFormat.BINARY ? binary() : text();
+    }
+
+    private TextMessage text() {
+        if (text == null) {
+            text = new TextMessage(raw != null ? raw
+                    : "{\"deviceId\":" + deviceId
+                    + ",\"stateRelay\":" + relayState
+                    + ",\"power\":\"" + power + "\""
+                    + ",\"ts\":" + deviceTs
+                    + ",\"receivedAt\":" + receivedAt + "}");
+        }
+        return text;
+    }
+
+    private BinaryMessage binary() {
+        if (raw != null) {
+            return null;
+        }
+        if (binary == null) {
+            ByteBuffer buffer = ByteBuffer.allocate(BINARY_SIZE)
+                    .putLong(deviceId)
+                    .putLong(receivedAt)
+                    .putLong(deviceTs)
+                    .putInt(power)
+                    .put((byte) (relayState ? 1 : 0));
+            buffer.flip();
+            binary = new BinaryMessage(buffer);
+        }
+        return binary;
+    }
+}
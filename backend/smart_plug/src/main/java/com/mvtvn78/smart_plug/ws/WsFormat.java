@@ -0,0 +1,12 @@
+package com.mvtvn78.smart_plug.ws;
+
+/**
+ * Định dạng frame telemetry của một session, chọn khi bắt tay bằng query param {@code format}
+ */
+public enum WsFormat {
+    TEXT, BINARY;
+
+    public static WsFormat of(String value) {
+        return "binary".equalsIgnoreCase(value) ? BINARY : TEXT;
+    }
+}
@@ -0,0 +1,21 @@
+package com.mvtvn78.smart_plug.ws;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * Message client gửi lên: {@code {"action":"subscribe","deviceIds":[4,7]}} hoặc {@code "unsubscribe"}
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class WsRequest {
+    public static final String SUBSCRIBE = "subscribe";
+    public static final String UNSUBSCRIBE = "unsubscribe";
+
+    private String action;
+    private List<Long> deviceIds;
+}
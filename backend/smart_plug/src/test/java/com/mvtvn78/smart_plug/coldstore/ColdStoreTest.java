@@ -0,0 +1,93 @@
+package com.mvtvn78.smart_plug.coldstore;
+
+import com.mvtvn78.smart_plug.model.Telemetry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColdStoreTest {
+	private static final LocalDate DAY = LocalDate.of(2025, 12, 24);
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void indexFollowsWritesAndRetention() throws IOException {
+		ColdStore store = open();
+		store.write(4L, DAY, rows(4L, DAY, 1, 3));
+		store.write(4L, DAY.plusDays(2), rows(4L, DAY.plusDays(2), 10, 3));
+
+		assertEquals(List.of(DAY, DAY.plusDays(2)), store.days(4L, DAY.minusDays(10), DAY.plusDays(10)));
+		assertTrue(store.hasDays(4L, DAY.plusDays(1), DAY.plusDays(2)));
+		assertFalse(store.hasDays(4L, DAY.plusDays(3), DAY.plusDays(10)));
+		assertFalse(store.hasDays(5L, DAY, DAY));
+
+		assertEquals(1, store.deleteBefore(DAY.plusDays(1)));
+		assertEquals(List.of(DAY.plusDays(2)), store.days(4L, DAY.minusDays(10), DAY.plusDays(10)));
+	}
+
+	@Test
+	void loadsIndexFromExistingBlocks() throws IOException {
+		ColdStore writer = open();
+		writer.write(4L, DAY, rows(4L, DAY, 1, 3));
+		writer.write(7L, DAY.plusDays(1), rows(7L, DAY.plusDays(1), 10, 3));
+
+		ColdStore store = open();
+
+		assertEquals(List.of(DAY), store.days(4L, DAY, DAY.plusDays(5)));
+		assertEquals(List.of(DAY.plusDays(1)), store.days(7L, DAY, DAY.plusDays(5)));
+	}
+
+	@Test
+	void pagesAcrossDaysInBothDirections() throws IOException {
+		ColdStore store = open();
+		store.write(4L, DAY, rows(4L, DAY, 1, 3));
+		store.write(4L, DAY.plusDays(1), rows(4L, DAY.plusDays(1), 10, 3));
+		LocalDateTime from = DAY.atStartOfDay();
+		LocalDateTime to = DAY.plusDays(2).atStartOfDay();
+
+		List<Telemetry> first = store.readPage(4L, from, 0, to, 4);
+		assertEquals(List.of(1L, 2L, 3L, 10L), ids(first));
+		Telemetry last = first.get(3);
+		assertEquals(List.of(11L, 12L), ids(store.readPage(4L, last.getTimestamp(), last.getId(), to, 4)));
+
+		assertEquals(List.of(12L, 11L, 10L, 3L), ids(store.readPageDesc(4L, to, 0, from, 4)));
+	}
+
+	private ColdStore open() {
+		ColdStore store = new ColdStore();
+		ReflectionTestUtils.setField(store, "dir", dir.toString());
+		store.loadIndex();
+		return store;
+	}
+
+	private static List<Long> ids(List<Telemetry> rows) {
+		return rows.stream().map(Telemetry::getId).toList();
+	}
+
+	private static List<Telemetry> rows(long deviceId, LocalDate day, long firstId, int count) {
+		List<Telemetry> rows = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			Telemetry t = new Telemetry();
+			t.setId(firstId + i);
+			t.setDeviceId(deviceId);
+			t.setTimestamp(day.atTime(10, 0).plusSeconds(5L * i));
+			t.setRelayState(true);
+			t.setPower(100 + i);
+			t.setDeviceTs(5000L * (i + 1));
+			rows.add(t);
+		}
+		return rows;
+	}
+}
@@ -0,0 +1,149 @@
+package com.mvtvn78.smart_plug.coldstore;
+
+import com.mvtvn78.smart_plug.model.Telemetry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Benchmark block nén so với bảng telemetry thô, mặc định không chạy:
+ * {@code mvn test -Dgroups=benchmark -Dtest.excludedGroups=}.
+ * <p>
+ * Không có database thì so với kích thước ước tính của một dòng ({@link TelemetryBlockCodecTest#RAW_ROW_BYTES}).
+ * Thêm {@code -Dbenchmark.jdbc-url=jdbc:postgresql://localhost:5432/... -Dbenchmark.jdbc-user=... -Dbenchmark.jdbc-password=...}
+ * để nạp cùng dữ liệu vào một bảng tạm cùng cấu trúc và đo kích thước thật (kể cả index) và tốc độ đọc từ Postgres.
+ */
+@Tag("benchmark")
+class TelemetryBlockCodecBenchmark {
+	private static final long DEVICE_ID = 4L;
+	private static final int WARMUP = 20;
+	private static final int ITERATIONS = 50;
+
+	@Test
+	void compressionRatioAndScanSpeed() throws Exception {
+		List<Telemetry> rows = TelemetryBlockCodecTest.day(DEVICE_ID, new Random(2));
+		byte[] block = TelemetryBlockCodec.encode(DEVICE_ID, rows);
+
+		for (int i = 0; i < WARMUP; i++) {
+			TelemetryBlockCodec.decode(block);
+		}
+		long scanned = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			scanned += TelemetryBlockCodec.decode(block).size();
+		}
+		double blockRowsPerSecond = scanned / ((System.nanoTime() - start) / 1e9);
+
+		System.out.printf("telemetry block: %d rows, %d bytes (%.2f B/row), ratio %.1fx vs estimated %d B/row, scan %.2f M rows/s%n",
+				rows.size(), block.length, (double) block.length / rows.size(),
+				(double) rows.size() * TelemetryBlockCodecTest.RAW_ROW_BYTES / block.length,
+				TelemetryBlockCodecTest.RAW_ROW_BYTES, blockRowsPerSecond / 1e6);
+
+		String url = System.getProperty("benchmark.jdbc-url");
+		if (url != null) {
+			compareWithPostgres(url, rows, block.length, blockRowsPerSecond);
+		}
+	}
+
+	private void compareWithPostgres(String url, List<Telemetry> rows, int blockBytes, double blockRowsPerSecond) throws Exception {
+		try (Connection connection = DriverManager.getConnection(url,
+				System.getProperty("benchmark.jdbc-user"), System.getProperty("benchmark.jdbc-password"))) {
+			try (Statement statement = connection.createStatement()) {
+				// cùng cột và index với bảng telemetry
+				statement.execute("drop table if exists telemetry_benchmark");
+				statement.execute("create table telemetry_benchmark (id bigint primary key, device_id bigint, payload varchar(255),"
+						+ " relay_state boolean, power integer, device_ts bigint, timestamp timestamp(6) not null)");
+				statement.execute("create index on telemetry_benchmark (device_id, timestamp, id)");
+			}
+			try {
+				insert(connection, rows);
+				long tableBytes;
+				try (Statement statement = connection.createStatement()) {
+					statement.execute("vacuum analyze telemetry_benchmark");
+					try (ResultSet rs = statement.executeQuery("select pg_total_relation_size('telemetry_benchmark')")) {
+						rs.next();
+						tableBytes = rs.getLong(1);
+					}
+				}
+
+				for (int i = 0; i < WARMUP / 4; i++) {
+					select(connection);
+				}
+				long scanned = 0;
+				long start = System.nanoTime();
+				for (int i = 0; i < ITERATIONS / 5; i++) {
+					scanned += select(connection).size();
+				}
+				double tableRowsPerSecond = scanned / ((System.nanoTime() - start) / 1e9);
+				assertEquals(rows.size(), select(connection).size());
+
+				System.out.printf("postgres table: %d bytes incl. index (%.2f B/row), ratio %.1fx, scan %.2f M rows/s, block scan %.1fx faster%n",
+						tableBytes, (double) tableBytes / rows.size(), (double) tableBytes / blockBytes,
+						tableRowsPerSecond / 1e6, blockRowsPerSecond / tableRowsPerSecond);
+			} finally {
+				try (Statement statement = connection.createStatement()) {
+					statement.execute("drop table telemetry_benchmark");
+				}
+			}
+		}
+	}
+
+	private static void insert(Connection connection, List<Telemetry> rows) throws Exception {
+		connection.setAutoCommit(false);
+		try (PreparedStatement insert = connection.prepareStatement(
+				"insert into telemetry_benchmark (id, device_id, payload, relay_state, power, device_ts, timestamp) values (?, ?, ?, ?, ?, ?, ?)")) {
+			for (Telemetry t : rows) {
+				insert.setLong(1, t.getId());
+				insert.setLong(2, t.getDeviceId());
+				insert.setString(3, t.getRawPayload());
+				insert.setObject(4, t.getRelayState(), Types.BOOLEAN);
+				insert.setObject(5, t.getPower(), Types.INTEGER);
+				insert.setObject(6, t.getDeviceTs(), Types.BIGINT);
+				insert.setTimestamp(7, Timestamp.valueOf(t.getTimestamp()));
+				insert.addBatch();
+			}
+			insert.executeBatch();
+		}
+		connection.commit();
+		connection.setAutoCommit(true);
+	}
+
+	/**
+	 * Đọc như đường đọc của ứng dụng: theo device, sắp theo (timestamp, id), dựng lại entity
+	 */
+	private static List<Telemetry> select(Connection connection) throws Exception {
+		List<Telemetry> rows = new ArrayList<>();
+		try (PreparedStatement select = connection.prepareStatement(
+				"select id, device_id, payload, relay_state, power, device_ts, timestamp from telemetry_benchmark"
+						+ " where device_id = ? order by timestamp, id")) {
+			select.setLong(1, DEVICE_ID);
+			select.setFetchSize(10_000);
+			try (ResultSet rs = select.executeQuery()) {
+				while (rs.next()) {
+					Telemetry t = new Telemetry();
+					t.setId(rs.getLong(1));
+					t.setDeviceId(rs.getLong(2));
+					t.setPayload(rs.getString(3));
+					t.setRelayState(rs.getObject(4, Boolean.class));
+					t.setPower(rs.getObject(5, Integer.class));
+					t.setDeviceTs(rs.getObject(6, Long.class));
+					t.setTimestamp(rs.getTimestamp(7).toLocalDateTime());
+					rows.add(t);
+				}
+			}
+		}
+		return rows;
+	}
+}
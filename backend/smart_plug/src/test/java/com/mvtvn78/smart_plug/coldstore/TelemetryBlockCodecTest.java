@@ -0,0 +1,88 @@
+package com.mvtvn78.smart_plug.coldstore;
+
+import com.mvtvn78.smart_plug.model.Telemetry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TelemetryBlockCodecTest {
+	/**
+	 * Kích thước ước tính một dòng telemetry trong PostgreSQL: tuple header 24 + item pointer 4
+	 * + id 8 + device_id 8 + relay_state 1 + power 4 + device_ts 8 + timestamp 8 (chưa tính index)
+	 */
+	static final int RAW_ROW_BYTES = 65;
+
+	@Test
+	void roundTrip() {
+		List<Telemetry> rows = day(4L, new Random(1));
+		rows.get(10).setTimestamp(rows.get(10).getTimestamp().plusNanos(123_000));
+		rows.get(20).setPower(Integer.MIN_VALUE);
+		rows.get(21).setPower(-1);
+
+		List<Telemetry> decoded = TelemetryBlockCodec.decode(TelemetryBlockCodec.encode(4L, rows));
+
+		assertEquals(rows.size(), decoded.size());
+		for (int i = 0; i < rows.size(); i++) {
+			Telemetry expected = rows.get(i);
+			Telemetry actual = decoded.get(i);
+			assertEquals(expected.getId(), actual.getId());
+			assertEquals(expected.getDeviceId(), actual.getDeviceId());
+			assertEquals(expected.getTimestamp(), actual.getTimestamp());
+			assertEquals(expected.getRawPayload(), actual.getRawPayload());
+			assertEquals(expected.getRelayState(), actual.getRelayState());
+			assertEquals(expected.getPower(), actual.getPower());
+			assertEquals(expected.getDeviceTs(), actual.getDeviceTs());
+		}
+	}
+
+	/**
+	 * Block nén phải nhỏ hơn nhiều so với cùng số dòng trong database
+	 */
+	@Test
+	void compressionRatio() {
+		List<Telemetry> rows = day(4L, new Random(2));
+		byte[] block = TelemetryBlockCodec.encode(4L, rows);
+		double ratio = (double) rows.size() * RAW_ROW_BYTES / block.length;
+
+		assertTrue(ratio > 5, "compression ratio " + ratio);
+	}
+
+	/**
+	 * Một ngày mẫu 5 giây: jitter vài ms, power thay đổi nhỏ, relay tắt/bật, thỉnh thoảng payload lạ
+	 */
+	static List<Telemetry> day(long deviceId, Random random) {
+		List<Telemetry> rows = new ArrayList<>();
+		LocalDateTime time = LocalDateTime.of(2025, 12, 24, 0, 0);
+		long id = 1000;
+		long deviceTs = 5000;
+		int power = 120;
+		for (int i = 0; i < 17_280; i++) {
+			Telemetry t = new Telemetry();
+			id += 1 + random.nextInt(20);
+			time = time.plusNanos((5000L + random.nextInt(40) - 20) * 1_000_000L);
+			t.setId(id);
+			t.setDeviceId(deviceId);
+			t.setTimestamp(time);
+			if (i % 1000 == 7) {
+				t.setPayload("{\"unknown\": " + i + "}");
+			} else {
+				boolean on = i % 3000 < 2000;
+				if (random.nextInt(4) == 0) {
+					power = Math.max(0, power + random.nextInt(7) - 3);
+				}
+				deviceTs += 5000 + random.nextInt(10);
+				t.setRelayState(on);
+				t.setPower(on ? power : 0);
+				t.setDeviceTs(deviceTs);
+			}
+			rows.add(t);
+		}
+		return rows;
+	}
+}
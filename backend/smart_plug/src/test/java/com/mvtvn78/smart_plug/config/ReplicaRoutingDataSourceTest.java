@@ -0,0 +1,101 @@
+package com.mvtvn78.smart_plug.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReplicaRoutingDataSourceTest {
+	private final DataSource primary = mock(DataSource.class);
+	private final DataSource replica = mock(DataSource.class);
+	private final DataSource lagCheck = mock(DataSource.class);
+	private final Statement statement = mock(Statement.class);
+	private final ResultSet resultSet = mock(ResultSet.class);
+
+	private final ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, replica, lagCheck, 5000, 1500);
+
+	@AfterEach
+	void tearDown() {
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+	}
+
+	/**
+	 * Replica trả về độ trễ {@code lagSeconds} cho truy vấn đo trễ
+	 */
+	private void replicaLag(double lagSeconds) throws SQLException {
+		Connection connection = mock(Connection.class);
+		when(lagCheck.getConnection()).thenReturn(connection);
+		when(connection.createStatement()).thenReturn(statement);
+		when(statement.executeQuery(anyString())).thenReturn(resultSet);
+		when(resultSet.next()).thenReturn(true);
+		when(resultSet.getDouble(1)).thenReturn(lagSeconds);
+	}
+
+	@Test
+	void routesReadOnlyTransactionsToUsableReplica() throws SQLException {
+		replicaLag(0.2);
+		routing.checkLag();
+
+		assertTrue(routing.isReplicaUsable());
+		assertEquals(200, routing.getLagMs());
+		assertEquals(ReplicaRoutingDataSource.Target.PRIMARY, routing.determineCurrentLookupKey());
+
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		assertEquals(ReplicaRoutingDataSource.Target.REPLICA, routing.determineCurrentLookupKey());
+	}
+
+	@Test
+	void lagAboveThresholdFallsBackToPrimary() throws SQLException {
+		replicaLag(5.001);
+		routing.checkLag();
+
+		assertFalse(routing.isReplicaUsable());
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		assertEquals(ReplicaRoutingDataSource.Target.PRIMARY, routing.determineCurrentLookupKey());
+	}
+
+	@Test
+	void unreachableReplicaFallsBackToPrimary() throws SQLException {
+		replicaLag(0);
+		routing.checkLag();
+		assertTrue(routing.isReplicaUsable());
+
+		when(lagCheck.getConnection()).thenThrow(new SQLTimeoutException("timeout"));
+		routing.checkLag();
+
+		assertFalse(routing.isReplicaUsable());
+		assertEquals(-1, routing.getLagMs());
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		assertEquals(ReplicaRoutingDataSource.Target.PRIMARY, routing.determineCurrentLookupKey());
+	}
+
+	@Test
+	void lagQueryUsesShortTimeout() throws SQLException {
+		replicaLag(0);
+		routing.checkLag();
+
+		// 1500 ms làm tròn lên 2 s
+		verify(statement).setQueryTimeout(2);
+	}
+
+	@Test
+	void replicaIsNotUsedBeforeFirstCheck() {
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+		assertEquals(ReplicaRoutingDataSource.Target.PRIMARY, routing.determineCurrentLookupKey());
+	}
+}
@@ -0,0 +1,36 @@
+package com.mvtvn78.smart_plug.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TelemetryCursorTest {
+	@Test
+	void roundTrip() {
+		LocalDateTime time = LocalDateTime.of(2025, 12, 24, 10, 0, 5, 123_456_000);
+		TelemetryCursor cursor = new TelemetryCursor(time, 987_654_321L);
+
+		TelemetryCursor decoded = TelemetryCursor.decode(cursor.encode());
+
+		assertEquals(time, decoded.getTimestamp());
+		assertEquals(987_654_321L, decoded.getId());
+	}
+
+	@Test
+	void encodedCursorIsUrlSafe() {
+		String encoded = new TelemetryCursor(LocalDateTime.of(2025, 12, 24, 23, 59, 59), Long.MAX_VALUE).encode();
+
+		assertTrue(encoded.matches("[A-Za-z0-9_-]+"), encoded);
+	}
+
+	@Test
+	void rejectsInvalidCursor() {
+		assertThrows(IllegalArgumentException.class, () -> TelemetryCursor.decode("not base64!"));
+		assertThrows(IllegalArgumentException.class, () -> TelemetryCursor.decode("bm8tc2VwYXJhdG9y"));
+		assertThrows(IllegalArgumentException.class, () -> TelemetryCursor.decode(""));
+	}
+}
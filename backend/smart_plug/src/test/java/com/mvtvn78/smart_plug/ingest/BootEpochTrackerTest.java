@@ -0,0 +1,118 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BootEpochTrackerTest {
+	/**
+	 * Thời điểm device khởi động theo đồng hồ server (ms)
+	 */
+	private static final long BOOT = 1_766_541_600_000L;
+	private static final long LATENCY = 40;
+
+	private final StubJdbcTemplate jdbcTemplate = new StubJdbcTemplate();
+	private BootEpochTracker tracker;
+
+	@BeforeEach
+	void setUp() {
+		tracker = new BootEpochTracker(jdbcTemplate);
+		ReflectionTestUtils.setField(tracker, "toleranceMs", 300_000L);
+	}
+
+	@Test
+	void redeliveryKeepsEpochOfItsBoot() {
+		long epoch = tracker.epochOf(4L, 5000, BOOT + 5000 + LATENCY);
+		for (long ts = 10_000; ts <= 60_000; ts += 5000) {
+			// độ trễ mạng dao động vẫn giữ nguyên nhãn
+			assertEquals(epoch, tracker.epochOf(4L, ts, BOOT + ts + LATENCY + ts % 7));
+		}
+
+		// broker gửi lại mẫu ts=10000 sau khi reconnect, muộn hơn 55 giây
+		assertEquals(epoch, tracker.epochOf(4L, 10_000, BOOT + 65_000 + LATENCY));
+		assertEquals(epoch, tracker.epochOf(4L, 65_000, BOOT + 65_000 + LATENCY));
+	}
+
+	@Test
+	void rebootStartsNewEpoch() {
+		long first = tracker.epochOf(4L, 5000, BOOT + 5000 + LATENCY);
+		tracker.epochOf(4L, 60_000, BOOT + 60_000 + LATENCY);
+
+		// khởi động lại ngay sau mẫu cuối, ts lặp lại các giá trị cũ
+		long reboot = BOOT + 61_000;
+		long second = tracker.epochOf(4L, 5000, reboot + 5000 + LATENCY);
+
+		assertNotEquals(first, second);
+		assertEquals(second, tracker.epochOf(4L, 10_000, reboot + 10_000 + LATENCY));
+	}
+
+	@Test
+	void rebootWhileOfflineStartsNewEpoch() {
+		long first = tracker.epochOf(4L, 5000, BOOT + 5000 + LATENCY);
+		// device mất mạng, khởi động lại và chạy lâu hơn uptime cũ trước khi gửi mẫu tiếp theo
+		long reboot = BOOT + 3_600_000;
+
+		assertNotEquals(first, tracker.epochOf(4L, 600_000, reboot + 600_000 + LATENCY));
+	}
+
+	@Test
+	void seedFromDatabaseCoversRedeliveryAfterRestart() {
+		tracker.seed(4L, BOOT + LATENCY);
+		tracker.seed(5L, BOOT + LATENCY);
+
+		// device 4: broker gửi lại sau khi backend khởi động lại (2 phút sau)
+		assertEquals(BOOT + LATENCY, tracker.epochOf(4L, 30_000, BOOT + 150_000));
+		// device 5: đã khởi động lại trong lúc backend dừng
+		assertEquals(BOOT + 3_600_000 + LATENCY, tracker.epochOf(5L, 5000, BOOT + 3_605_000 + LATENCY));
+	}
+
+	@Test
+	void flushSavesChangedEpochsAndRetriesAfterFailure() {
+		tracker.seed(4L, BOOT + LATENCY);
+		tracker.epochOf(4L, 5000, BOOT + 5000 + LATENCY);
+		long epoch = tracker.epochOf(5L, 5000, BOOT + 5000 + LATENCY);
+
+		jdbcTemplate.failing = true;
+		tracker.flush();
+		assertTrue(jdbcTemplate.updates.isEmpty());
+
+		jdbcTemplate.failing = false;
+		tracker.flush();
+		// device 4 giữ nhãn đã lưu nên không cần ghi lại
+		assertEquals(List.of(Map.entry(5L, epoch)), jdbcTemplate.updates);
+
+		tracker.flush();
+		assertEquals(1, jdbcTemplate.updates.size());
+	}
+
+	/**
+	 * Ghi lại các cặp deviceId -> nhãn thay vì ghi database, lỗi khi failing = true
+	 */
+	private static class StubJdbcTemplate extends JdbcTemplate {
+		final List<Map.Entry<Long, Long>> updates = new ArrayList<>();
+		boolean failing;
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+									   ParameterizedPreparedStatementSetter<T> pss) {
+			if (failing) {
+				throw new DataAccessResourceFailureException("database down");
+			}
+			updates.addAll((Collection<Map.Entry<Long, Long>>) batchArgs);
+			return new int[0][];
+		}
+	}
+}
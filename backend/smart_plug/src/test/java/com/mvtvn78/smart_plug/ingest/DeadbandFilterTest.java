@@ -0,0 +1,64 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import com.mvtvn78.smart_plug.model.StorageMode;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeadbandFilterTest {
+	private static final StoragePolicy DEADBAND = new StoragePolicy(StorageMode.DEADBAND, 5, 60_000);
+
+	private final DeadbandFilter filter = new DeadbandFilter();
+
+	@Test
+	void storeAllKeepsEverySample() {
+		for (int i = 0; i < 3; i++) {
+			assertTrue(filter.shouldStore(4L, StoragePolicy.ALL, true, 100, i * 1000L));
+		}
+		assertEquals(0, filter.getSuppressed());
+	}
+
+	@Test
+	void suppressesSmallChanges() {
+		assertTrue(filter.shouldStore(4L, DEADBAND, true, 100, 0));
+
+		assertFalse(filter.shouldStore(4L, DEADBAND, true, 105, 1000));
+		assertFalse(filter.shouldStore(4L, DEADBAND, true, 95, 2000));
+		assertTrue(filter.shouldStore(4L, DEADBAND, true, 106, 3000));
+		assertEquals(2, filter.getSuppressed());
+	}
+
+	@Test
+	void comparesWithLastStoredSample() {
+		assertTrue(filter.shouldStore(4L, DEADBAND, true, 100, 0));
+		assertFalse(filter.shouldStore(4L, DEADBAND, true, 104, 1000));
+
+		// trôi dần từng chút vẫn bị so với mẫu 100 W đã lưu
+		assertTrue(filter.shouldStore(4L, DEADBAND, true, 108, 2000));
+	}
+
+	@Test
+	void storesRelayChange() {
+		assertTrue(filter.shouldStore(4L, DEADBAND, true, 0, 0));
+
+		assertTrue(filter.shouldStore(4L, DEADBAND, false, 0, 1000));
+	}
+
+	@Test
+	void storesHeartbeat() {
+		assertTrue(filter.shouldStore(4L, DEADBAND, true, 100, 0));
+		assertFalse(filter.shouldStore(4L, DEADBAND, true, 100, 59_999));
+
+		assertTrue(filter.shouldStore(4L, DEADBAND, true, 100, 60_000));
+		assertFalse(filter.shouldStore(4L, DEADBAND, true, 100, 61_000));
+	}
+
+	@Test
+	void devicesAreIndependent() {
+		assertTrue(filter.shouldStore(4L, DEADBAND, true, 100, 0));
+
+		assertTrue(filter.shouldStore(5L, DEADBAND, true, 100, 1000));
+	}
+}
@@ -0,0 +1,94 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import com.mvtvn78.smart_plug.data.DeviceState;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeviceStateStoreTest {
+	private final DeviceStateStore store = new DeviceStateStore();
+
+	@Test
+	void keepsLatestSample() {
+		store.update(7L, true, 120, 5000, 1_000L);
+		store.update(7L, false, 0, 10_000, 2_000L);
+
+		DeviceState state = store.get(7L);
+		assertEquals(7L, state.getDeviceId());
+		assertFalse(state.isRelayState());
+		assertEquals(0, state.getPower());
+		assertEquals(10_000L, state.getDeviceTs());
+		assertEquals(2_000L, state.getReceivedAt());
+	}
+
+	@Test
+	void unwrittenIdReturnsNull() {
+		store.update(1L, true, 5, 1, 1);
+
+		// cùng khối với device đã ghi
+		assertNull(store.get(2L));
+		// khối chưa tạo, trong và ngoài mảng khối ban đầu
+		assertNull(store.get(4096L * 3));
+		assertNull(store.get(50_000_000L));
+		assertThrows(IllegalArgumentException.class, () -> store.get(-1L));
+	}
+
+	@Test
+	void growsChunksForLargeIds() {
+		long[] ids = {0L, 4095L, 4096L, 65_535L, 65_536L, 1_000_003L, 40_000_000L};
+		for (long id : ids) {
+			store.update(id, id % 2 == 0, (int) (id % 1000), id * 10, id * 100);
+		}
+
+		for (long id : ids) {
+			DeviceState state = store.get(id);
+			assertEquals(id, state.getDeviceId());
+			assertEquals(id % 2 == 0, state.isRelayState());
+			assertEquals((int) (id % 1000), state.getPower());
+			assertEquals(id * 10, state.getDeviceTs());
+			assertEquals(id * 100, state.getReceivedAt());
+		}
+		// nới mảng khối không làm mất device ở khối cũ
+		assertNull(store.get(4094L));
+	}
+
+	@Test
+	void concurrentReaderNeverSeesTornSample() throws Exception {
+		long deviceId = 4242L;
+		store.update(deviceId, true, 0, 0, 0);
+		AtomicBoolean running = new AtomicBoolean(true);
+		AtomicReference<String> torn = new AtomicReference<>();
+
+		Thread writer = new Thread(() -> {
+			for (int i = 1; i <= 200_000; i++) {
+				// mọi trường của một mẫu suy ra từ cùng một i
+				store.update(deviceId, i % 2 == 0, i, i * 10L, i * 100L);
+			}
+			running.set(false);
+		});
+		Thread reader = new Thread(() -> {
+			while (running.get() && torn.get() == null) {
+				DeviceState s = store.get(deviceId);
+				int i = s.getPower();
+				if (s.getDeviceTs() != i * 10L || s.getReceivedAt() != i * 100L || s.isRelayState() != (i % 2 == 0)) {
+					torn.set("power=" + i + " deviceTs=" + s.getDeviceTs() + " receivedAt=" + s.getReceivedAt());
+				}
+			}
+		});
+		writer.start();
+		reader.start();
+		writer.join();
+		reader.join();
+
+		assertNull(torn.get());
+		assertEquals(200_000, store.get(deviceId).getPower());
+		assertTrue(store.get(deviceId).isRelayState());
+	}
+}
@@ -0,0 +1,145 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import com.mvtvn78.smart_plug.model.EnergyPeriod;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EnergyIntegratorTest {
+	private static final long T0 = LocalDateTime.of(2025, 12, 24, 10, 0)
+			.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	private static final LocalDate DAY = LocalDate.ofInstant(Instant.ofEpochMilli(T0), ZoneId.systemDefault());
+	private static final double DELTA = 1e-9;
+
+	private EnergyIntegrator integrator;
+
+	@BeforeEach
+	void setUp() {
+		// không gọi flush nên không cần database
+		integrator = new EnergyIntegrator(null, null);
+		ReflectionTestUtils.setField(integrator, "maxGapMs", 60_000L);
+	}
+
+	@Test
+	void integratesTrapezoids() {
+		integrator.add(4L, true, 100, T0);
+		integrator.add(4L, true, 200, T0 + 36_000);
+		integrator.add(4L, true, 200, T0 + 72_000);
+
+		// (100 + 200) / 2 W * 36 s + 200 W * 36 s
+		double expected = 150 * 0.01 + 200 * 0.01;
+		assertEquals(expected, integrator.pendingWh(4L, EnergyPeriod.DAY, DAY), DELTA);
+		assertEquals(expected, integrator.pendingWh(4L, EnergyPeriod.MONTH, DAY.withDayOfMonth(1)), DELTA);
+	}
+
+	@Test
+	void relayOffCountsAsZeroPower() {
+		integrator.add(4L, true, 100, T0);
+		// firmware vẫn gửi power khi relay tắt
+		integrator.add(4L, false, 100, T0 + 36_000);
+		integrator.add(4L, false, 100, T0 + 72_000);
+
+		assertEquals(50 * 0.01, integrator.pendingWh(4L, EnergyPeriod.DAY, DAY), DELTA);
+	}
+
+	@Test
+	void skipsGapsLongerThanMax() {
+		integrator.add(4L, true, 100, T0);
+		integrator.add(4L, true, 100, T0 + 60_001);
+		assertEquals(0, integrator.pendingWh(4L, EnergyPeriod.DAY, DAY), DELTA);
+
+		// khoảng sau lỗ hổng vẫn được tính
+		integrator.add(4L, true, 100, T0 + 60_001 + 36_000);
+		assertEquals(100 * 0.01, integrator.pendingWh(4L, EnergyPeriod.DAY, DAY), DELTA);
+	}
+
+	@Test
+	void ignoresOutOfOrderSamples() {
+		integrator.add(4L, true, 100, T0);
+		integrator.add(4L, true, 100, T0 - 1000);
+
+		assertEquals(0, integrator.pendingWh(4L, EnergyPeriod.DAY, DAY), DELTA);
+	}
+
+	@Test
+	void negativePowerIsClamped() {
+		integrator.add(4L, true, -50, T0);
+		integrator.add(4L, true, -50, T0 + 36_000);
+
+		assertEquals(0, integrator.pendingWh(4L, EnergyPeriod.DAY, DAY), DELTA);
+	}
+
+	@Test
+	void splitsIntervalAcrossMidnight() {
+		long midnight = DAY.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		integrator.add(4L, true, 100, midnight - 18_000);
+		integrator.add(4L, true, 200, midnight + 18_000);
+
+		// công suất tại nửa đêm nội suy 150 W: (100 + 150) / 2 W * 18 s trước, (150 + 200) / 2 W * 18 s sau
+		assertEquals(125 * 0.005, integrator.pendingWh(4L, EnergyPeriod.DAY, DAY), DELTA);
+		assertEquals(175 * 0.005, integrator.pendingWh(4L, EnergyPeriod.DAY, DAY.plusDays(1)), DELTA);
+	}
+
+	@Test
+	void sampleAtMidnightBelongsToPreviousDay() {
+		long midnight = DAY.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		integrator.add(4L, true, 100, midnight - 36_000);
+		integrator.add(4L, true, 100, midnight);
+
+		assertEquals(100 * 0.01, integrator.pendingWh(4L, EnergyPeriod.DAY, DAY), DELTA);
+		assertEquals(0, integrator.pendingWh(4L, EnergyPeriod.DAY, DAY.plusDays(1)), DELTA);
+	}
+
+	@Test
+	void readsSeeFlushingEnergyUntilCommitAndNotTwiceAfter() throws Exception {
+		JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+		integrator = new EnergyIntegrator(jdbcTemplate, mock(PlatformTransactionManager.class));
+		ReflectionTestUtils.setField(integrator, "maxGapMs", 60_000L);
+		integrator.add(4L, true, 100, T0);
+		integrator.add(4L, true, 100, T0 + 36_000);
+
+		// "database": energy_counter sau khi commit
+		AtomicReference<Double> stored = new AtomicReference<>(0d);
+		AtomicReference<CompletableFuture<Double>> readDuringFlush = new AtomicReference<>();
+		when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+			readDuringFlush.set(CompletableFuture.supplyAsync(() -> read(stored)));
+			// lần đọc phải chờ flush xong thay vì thấy 0 (pending đã lấy ra, database chưa commit)
+			Thread.sleep(200);
+			assertFalse(readDuringFlush.get().isDone());
+			List<Object[]> rows = invocation.getArgument(1);
+			for (Object[] row : rows) {
+				if (row[1].equals(EnergyPeriod.DAY.name())) {
+					stored.set(stored.get() + (double) row[3]);
+				}
+			}
+			return new int[rows.size()];
+		});
+
+		integrator.flush();
+
+		assertEquals(1.0, readDuringFlush.get().get(5, TimeUnit.SECONDS), DELTA);
+		assertEquals(1.0, read(stored), DELTA);
+	}
+
+	private double read(AtomicReference<Double> stored) {
+		return integrator.readConsistent(() -> stored.get() + integrator.pendingWh(4L, EnergyPeriod.DAY, DAY));
+	}
+}
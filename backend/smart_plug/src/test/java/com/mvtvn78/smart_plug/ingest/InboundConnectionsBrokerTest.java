@@ -0,0 +1,189 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * So sánh throughput nhận telemetry qua 1 và N kết nối inbound (mqtt.inbound.connections),
+ * chia topic theo hash và subscribe theo lô như backend. Chạy với broker thật, mặc định không chạy:
+ * {@code docker compose --profile local-broker up -d mqtt_broker}
+ * rồi {@code mvn test -Dgroups=broker -Dtest.excludedGroups= -Dtest=InboundConnectionsBrokerTest}.
+ * Đổi số kết nối bằng {@code -Dmqtt.it.connections=8}, broker bằng {@code -Dmqtt.it.broker-url=tcp://host:1883}.
+ */
+@Tag("broker")
+class InboundConnectionsBrokerTest {
+	private static final int DEVICES = 1000;
+	private static final int MESSAGES_PER_DEVICE = 50;
+	private static final int PUBLISHERS = 4;
+	private static final int PUBLISH_WINDOW = 1000;
+
+	private final String brokerUrl = System.getProperty("mqtt.it.broker-url", "tcp://localhost:1883");
+	private final int connections = Integer.getInteger("mqtt.it.connections", 4);
+
+	@Test
+	void comparesOneAndManyInboundConnections() throws Exception {
+		double single = measure(1);
+		double sharded = measure(connections);
+
+		System.out.printf("inbound connections: 1 -> %.0f msg/s, %d -> %.0f msg/s (x%.2f)%n",
+				single, connections, sharded, sharded / single);
+	}
+
+	/**
+	 * @return số message/giây nhận được trên {@code n} kết nối
+	 */
+	private double measure(int n) throws Exception {
+		String prefix = "/data/bench-" + System.nanoTime() + "-";
+		List<String> topics = new ArrayList<>();
+		for (int i = 0; i < DEVICES; i++) {
+			topics.add(prefix + i);
+		}
+		int total = DEVICES * MESSAGES_PER_DEVICE;
+		CountDownLatch done = new CountDownLatch(total);
+		AtomicInteger invalid = new AtomicInteger();
+
+		List<MqttClient> subscribers = new ArrayList<>();
+		for (int c = 0; c < n; c++) {
+			subscribers.add(subscriber("bench_in_" + c, shard(topics, c, n), done, invalid));
+		}
+		List<MqttAsyncClient> publishers = new ArrayList<>();
+		for (int p = 0; p < PUBLISHERS; p++) {
+			publishers.add(publisher("bench_out_" + p));
+		}
+		try {
+			long start = System.nanoTime();
+			List<Thread> threads = new ArrayList<>();
+			for (int p = 0; p < PUBLISHERS; p++) {
+				int first = p;
+				MqttAsyncClient client = publishers.get(p);
+				Thread thread = new Thread(() -> publishAll(client, topics, first));
+				thread.start();
+				threads.add(thread);
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			assertTrue(done.await(120, TimeUnit.SECONDS), "received " + (total - done.getCount()) + "/" + total);
+			long elapsedMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+			assertEquals(0, invalid.get());
+
+			double rate = total * 1000.0 / elapsedMs;
+			System.out.printf("%d inbound connection(s): %d messages in %d ms (%.0f msg/s)%n", n, total, elapsedMs, rate);
+			return rate;
+		} finally {
+			for (MqttAsyncClient client : publishers) {
+				client.disconnect().waitForCompletion();
+				client.close();
+			}
+			for (MqttClient client : subscribers) {
+				client.disconnect();
+				client.close();
+			}
+		}
+	}
+
+	/**
+	 * Topic của kết nối {@code c}, chia giống MqttSubscriptions
+	 */
+	private static List<String> shard(List<String> topics, int c, int n) {
+		return topics.stream().filter(topic -> MqttSubscriptions.shardOf(topic, n) == c).toList();
+	}
+
+	private MqttClient subscriber(String clientId, List<String> topics, CountDownLatch done,
+			AtomicInteger invalid) throws Exception {
+		MqttClient client = new MqttClient(brokerUrl, clientId + "_" + System.nanoTime(), new MemoryPersistence());
+		// mỗi kết nối một thread nhận, parse như thread nhận của backend
+		TelemetryPayloadParser parser = new TelemetryPayloadParser();
+		client.setCallback(new MqttCallback() {
+			@Override
+			public void connectionLost(Throwable cause) {
+			}
+
+			@Override
+			public void messageArrived(String topic, MqttMessage message) {
+				if (!parser.parse(message.getPayload())) {
+					invalid.incrementAndGet();
+				}
+				done.countDown();
+			}
+
+			@Override
+			public void deliveryComplete(IMqttDeliveryToken token) {
+			}
+		});
+		MqttConnectOptions options = new MqttConnectOptions();
+		options.setCleanSession(true);
+		options.setMaxInflight(PUBLISH_WINDOW);
+		client.connect(options);
+		for (int from = 0; from < topics.size(); from += MqttSubscriptions.DEFAULT_SUBSCRIBE_BATCH_SIZE) {
+			String[] batch = topics.subList(from, Math.min(topics.size(), from + MqttSubscriptions.DEFAULT_SUBSCRIBE_BATCH_SIZE))
+					.toArray(new String[0]);
+			int[] qos = new int[batch.length];
+			Arrays.fill(qos, MqttSubscriptions.QOS);
+			client.subscribe(batch, qos);
+		}
+		return client;
+	}
+
+	private MqttAsyncClient publisher(String clientId) throws Exception {
+		MqttAsyncClient client = new MqttAsyncClient(brokerUrl, clientId + "_" + System.nanoTime(), new MemoryPersistence());
+		MqttConnectOptions options = new MqttConnectOptions();
+		options.setCleanSession(true);
+		options.setMaxInflight(PUBLISH_WINDOW);
+		client.connect(options).waitForCompletion();
+		return client;
+	}
+
+	/**
+	 * Publisher {@code first} gửi cho các device first, first + PUBLISHERS, ...; giữ tối đa PUBLISH_WINDOW message chờ PUBACK.
+	 */
+	private static void publishAll(MqttAsyncClient client, List<String> topics, int first) {
+		Semaphore window = new Semaphore(PUBLISH_WINDOW);
+		IMqttActionListener release = new IMqttActionListener() {
+			@Override
+			public void onSuccess(IMqttToken token) {
+				window.release();
+			}
+
+			@Override
+			public void onFailure(IMqttToken token, Throwable e) {
+				window.release();
+			}
+		};
+		try {
+			for (int seq = 1; seq <= MESSAGES_PER_DEVICE; seq++) {
+				for (int i = first; i < topics.size(); i += PUBLISHERS) {
+					MqttMessage message = new MqttMessage(("{\"stateRelay\": true,\"power\": \"" + (i + seq)
+							+ "\",\"ts\": " + seq * 5000L + "}").getBytes(StandardCharsets.UTF_8));
+					message.setQos(MqttSubscriptions.QOS);
+					window.acquire();
+					client.publish(topics.get(i), message, null, release);
+				}
+			}
+			window.acquire(PUBLISH_WINDOW);
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
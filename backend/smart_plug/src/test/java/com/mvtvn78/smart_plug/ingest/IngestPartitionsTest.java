@@ -0,0 +1,77 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IngestPartitionsTest {
+	private static final int DEVICES = 50;
+	private static final int EVENTS_PER_DEVICE = 500;
+
+	@Test
+	void keepsPerDeviceOrderAcrossPartitions() throws Exception {
+		Map<Long, List<Long>> handled = new ConcurrentHashMap<>();
+		Map<Long, String> threads = new ConcurrentHashMap<>();
+		AtomicInteger wrongThread = new AtomicInteger();
+		IngestPartitions partitions = new IngestPartitions(4, 64, event -> {
+			// chỉ một thread xử lý một device nên list của device không cần đồng bộ
+			handled.computeIfAbsent(event.getDeviceId(), id -> new ArrayList<>()).add(event.getReceivedAt());
+			String thread = Thread.currentThread().getName();
+			if (!thread.equals(threads.computeIfAbsent(event.getDeviceId(), id -> thread))) {
+				wrongThread.incrementAndGet();
+			}
+		});
+		partitions.start();
+
+		// xen kẽ các device, receivedAt dùng làm số thứ tự
+		for (long seq = 0; seq < EVENTS_PER_DEVICE; seq++) {
+			for (long deviceId = 1; deviceId <= DEVICES; deviceId++) {
+				partitions.dispatch(new IngestEvent(deviceId, new byte[0], seq));
+			}
+		}
+		partitions.stop(10_000);
+
+		assertEquals(DEVICES, handled.size());
+		for (Map.Entry<Long, List<Long>> entry : handled.entrySet()) {
+			List<Long> seqs = entry.getValue();
+			assertEquals(EVENTS_PER_DEVICE, seqs.size(), "device " + entry.getKey());
+			for (int i = 0; i < seqs.size(); i++) {
+				assertEquals(i, seqs.get(i), "device " + entry.getKey());
+			}
+		}
+		assertEquals(0, wrongThread.get());
+		// cả 4 partition đều có device
+		assertEquals(4, threads.values().stream().distinct().count());
+	}
+
+	@Test
+	void stopDrainsQueueWithoutInterruptingHandler() throws Exception {
+		AtomicInteger handled = new AtomicInteger();
+		AtomicInteger interrupted = new AtomicInteger();
+		IngestPartitions partitions = new IngestPartitions(2, 1000, event -> {
+			try {
+				// giả lập ghi chậm (như TelemetryWriter.write chờ hàng đợi)
+				Thread.sleep(1);
+			} catch (InterruptedException e) {
+				interrupted.incrementAndGet();
+				Thread.currentThread().interrupt();
+			}
+			handled.incrementAndGet();
+		});
+		partitions.start();
+		for (int i = 0; i < 400; i++) {
+			partitions.dispatch(new IngestEvent(i, new byte[0], i));
+		}
+
+		partitions.stop(10_000);
+
+		assertEquals(400, handled.get());
+		assertEquals(0, interrupted.get());
+	}
+}
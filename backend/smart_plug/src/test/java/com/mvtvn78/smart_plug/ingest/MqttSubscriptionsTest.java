@@ -0,0 +1,114 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.integration.mqtt.inbound.MqttPahoMessageDrivenChannelAdapter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class MqttSubscriptionsTest {
+
+	/**
+	 * Regex sinh ra chỉ dùng cú pháp chung của POSIX ARE và java.util.regex, nên kiểm tra được ngoài Postgres.
+	 * Mỗi cặp filter/topic phải cho cùng kết quả ở matches và toRegex.
+	 */
+	private static boolean bothMatch(String filter, String topic) {
+		boolean matches = MqttSubscriptions.matches(filter, topic);
+		boolean regex = Pattern.matches(MqttSubscriptions.toRegex(filter), topic);
+		assertEquals(matches, regex);
+		return matches;
+	}
+
+	@Test
+	void plusMatchesExactlyOneLevel() {
+		assertTrue(bothMatch("/data/+", "/data/plug1"));
+		assertTrue(bothMatch("/data/+", "/data/"));
+		assertFalse(bothMatch("/data/+", "/data/plug1/extra"));
+		assertFalse(bothMatch("/data/+", "/data"));
+		assertFalse(bothMatch("/data/+", "/relay/plug1"));
+		assertTrue(bothMatch("/+/plug1", "/data/plug1"));
+	}
+
+	@Test
+	void hashMatchesParentAndAllChildren() {
+		assertTrue(bothMatch("/data/#", "/data"));
+		assertTrue(bothMatch("/data/#", "/data/plug1"));
+		assertTrue(bothMatch("/data/#", "/data/plug1/a/b"));
+		assertFalse(bothMatch("/data/#", "/database/plug1"));
+		assertTrue(bothMatch("#", "/data/plug1"));
+	}
+
+	@Test
+	void leadingWildcardSkipsDollarTopics() {
+		assertFalse(bothMatch("#", "$SYS/broker/uptime"));
+		assertFalse(bothMatch("+/broker/uptime", "$SYS/broker/uptime"));
+		assertTrue(bothMatch("$SYS/#", "$SYS/broker/uptime"));
+	}
+
+	@Test
+	void ignoresSharedSubscriptionPrefix() {
+		assertTrue(bothMatch("$share/backend//data/+", "/data/plug1"));
+		assertFalse(bothMatch("$share/backend//data/+", "/relay/plug1"));
+		assertTrue(bothMatch("$share/backend/sensors/#", "sensors/a/b"));
+		assertEquals(MqttSubscriptions.toRegex("/data/+"), MqttSubscriptions.toRegex("$share/g//data/+"));
+	}
+
+	@Test
+	void escapesRegexMetacharactersInTopicNames() {
+		assertTrue(bothMatch("/data/plug.1", "/data/plug.1"));
+		assertFalse(bothMatch("/data/plug.1", "/data/plugX1"));
+		assertTrue(bothMatch("/data/a+b(c)[d]{e}|f^g$h?i*j\\k", "/data/a+b(c)[d]{e}|f^g$h?i*j\\k"));
+		assertFalse(bothMatch("/data/a*", "/data/aaa"));
+		assertFalse(bothMatch("/data/a|/b", "/b"));
+	}
+
+	@Test
+	void filterForPrefixesSharedGroupOnce() {
+		MqttSubscriptions shared = new MqttSubscriptions("backend", "/data/+");
+
+		assertEquals("$share/backend//data/plug1", shared.filterFor("/data/plug1"));
+		assertEquals("$share/other//data/+", shared.filterFor("$share/other//data/+"));
+		assertEquals("/data/plug1", new MqttSubscriptions("", "/data/+").filterFor("/data/plug1"));
+	}
+
+	@Test
+	void subscribeAllSendsEachShardInBatches() {
+		MqttSubscriptions subscriptions = new MqttSubscriptions("", "");
+		subscriptions.setSubscribeBatchSize(3);
+		List<MqttPahoMessageDrivenChannelAdapter> adapters = List.of(
+				mock(MqttPahoMessageDrivenChannelAdapter.class), mock(MqttPahoMessageDrivenChannelAdapter.class));
+		adapters.forEach(subscriptions::register);
+		List<String> topics = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			topics.add("/data/plug" + i);
+		}
+
+		subscriptions.subscribeAll(topics);
+
+		Set<String> subscribed = new HashSet<>();
+		for (int i = 0; i < adapters.size(); i++) {
+			ArgumentCaptor<String[]> batches = ArgumentCaptor.forClass(String[].class);
+			verify(adapters.get(i), atLeastOnce()).addTopics(batches.capture(), any());
+			for (String[] batch : batches.getAllValues()) {
+				assertTrue(batch.length <= 3);
+				for (String topic : batch) {
+					assertEquals(i, subscriptions.connectionOf(topic));
+					assertTrue(subscribed.add(topic), topic);
+				}
+			}
+		}
+		assertEquals(new HashSet<>(topics), subscribed);
+	}
+}
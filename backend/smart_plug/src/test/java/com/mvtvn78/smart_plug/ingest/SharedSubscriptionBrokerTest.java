@@ -0,0 +1,97 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Chạy với broker thật, mặc định không chạy:
+ * {@code docker compose --profile local-broker up -d mqtt_broker}
+ * rồi {@code mvn test -Dgroups=broker -Dtest.excludedGroups=}.
+ * Đổi broker bằng {@code -Dmqtt.it.broker-url=tcp://host:1883}.
+ */
+@Tag("broker")
+class SharedSubscriptionBrokerTest {
+	private static final int MESSAGES = 2000;
+
+	private final String brokerUrl = System.getProperty("mqtt.it.broker-url", "tcp://localhost:1883");
+
+	@Test
+	void sharedGroupDeliversEachMessageToOneNode() throws Exception {
+		String topic = "/data/it-" + System.nanoTime();
+		String filter = new MqttSubscriptions("backend", "").filterFor(topic);
+		Set<String> seen = ConcurrentHashMap.newKeySet();
+		AtomicInteger duplicates = new AtomicInteger();
+		AtomicInteger node1 = new AtomicInteger();
+		AtomicInteger node2 = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(MESSAGES);
+
+		MqttClient sub1 = subscriber("it_in_node1", filter, seen, duplicates, node1, done);
+		MqttClient sub2 = subscriber("it_in_node2", filter, seen, duplicates, node2, done);
+		MqttClient pub = connect("it_out");
+		try {
+			long start = System.nanoTime();
+			for (int i = 0; i < MESSAGES; i++) {
+				MqttMessage message = new MqttMessage(
+						("{\"stateRelay\":true,\"power\":\"" + i + "\",\"ts\":" + i + "}").getBytes(StandardCharsets.UTF_8));
+				message.setQos(MqttSubscriptions.QOS);
+				pub.publish(topic, message);
+			}
+			assertTrue(done.await(60, TimeUnit.SECONDS), "received " + seen.size() + "/" + MESSAGES);
+			long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+			System.out.printf("shared subscription: %d messages in %d ms (%.0f msg/s), node1=%d node2=%d duplicates=%d%n",
+					MESSAGES, elapsedMs, MESSAGES * 1000.0 / Math.max(1, elapsedMs), node1.get(), node2.get(), duplicates.get());
+			assertEquals(MESSAGES, seen.size());
+			assertEquals(0, duplicates.get());
+			assertTrue(node1.get() > 0 && node2.get() > 0, "broker did not balance across the group");
+		} finally {
+			disconnect(pub);
+			disconnect(sub1);
+			disconnect(sub2);
+		}
+	}
+
+	private MqttClient subscriber(String clientId, String filter, Set<String> seen,
+			AtomicInteger duplicates, AtomicInteger received, CountDownLatch done) throws Exception {
+		MqttClient client = connect(clientId);
+		client.subscribe(filter, MqttSubscriptions.QOS, (topic, message) -> {
+			received.incrementAndGet();
+			if (seen.add(new String(message.getPayload(), StandardCharsets.UTF_8))) {
+				done.countDown();
+			} else {
+				duplicates.incrementAndGet();
+			}
+		});
+		return client;
+	}
+
+	private MqttClient connect(String clientId) throws Exception {
+		MqttClient client = new MqttClient(brokerUrl, clientId + "_" + System.nanoTime(), new MemoryPersistence());
+		MqttConnectOptions options = new MqttConnectOptions();
+		options.setCleanSession(true);
+		options.setMaxInflight(1000);
+		client.connect(options);
+		return client;
+	}
+
+	private static void disconnect(MqttClient client) throws Exception {
+		if (client.isConnected()) {
+			client.disconnect();
+		}
+		client.close();
+	}
+}
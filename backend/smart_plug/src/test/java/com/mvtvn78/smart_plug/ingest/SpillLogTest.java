@@ -0,0 +1,164 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import com.mvtvn78.smart_plug.model.Telemetry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpillLogTest {
+	/**
+	 * Record không có payload: header 8 + body 34 byte
+	 */
+	private static final int RECORD_BYTES = 42;
+	private static final LocalDateTime TIME = LocalDateTime.of(2025, 12, 24, 10, 0, 0, 123_000_000);
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void replaysFromCheckpointAfterRestart() throws IOException {
+		SpillLog spill = open(4096);
+		spill.append(List.of(sample(1), sample(2), sample(3)));
+
+		assertEquals(2, spill.read(2).size());
+		spill.commit();
+		spill.close();
+
+		// chỉ record chưa commit được đọc lại
+		SpillLog reopened = open(4096);
+		List<Telemetry> pending = reopened.read(10);
+		assertEquals(1, pending.size());
+		assertSample(3, pending.get(0));
+
+		// chưa commit thì khởi động lại vẫn đọc lại từ checkpoint
+		reopened.close();
+		assertEquals(1, open(4096).read(10).size());
+	}
+
+	@Test
+	void rewindReadsAgain() throws IOException {
+		SpillLog spill = open(4096);
+		spill.append(List.of(sample(1), sample(2)));
+
+		assertEquals(2, spill.read(10).size());
+		spill.rewind();
+		List<Telemetry> again = spill.read(10);
+
+		assertEquals(2, again.size());
+		assertSample(1, again.get(0));
+		spill.commit();
+		assertTrue(spill.isEmpty());
+	}
+
+	@Test
+	void stopsAtRecordWithBadCrc() throws IOException {
+		SpillLog spill = open(4096);
+		spill.append(List.of(sample(1), sample(2), sample(3)));
+		spill.close();
+
+		// hỏng một byte trong body của record thứ hai
+		try (FileChannel channel = FileChannel.open(segments().get(0), StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[]{0x7f}), RECORD_BYTES + 8 + 5);
+		}
+
+		SpillLog reopened = open(4096);
+		List<Telemetry> replayed = reopened.read(10);
+		assertEquals(1, replayed.size());
+		assertSample(1, replayed.get(0));
+
+		// record mới được ghi đè lên phần hỏng
+		reopened.append(sample(4));
+		reopened.rewind();
+		List<Telemetry> afterAppend = reopened.read(10);
+		assertEquals(2, afterAppend.size());
+		assertSample(4, afterAppend.get(1));
+	}
+
+	@Test
+	void rotatesSegmentsAndDeletesCommittedOnes() throws IOException {
+		// mỗi segment chứa được 2 record
+		SpillLog spill = open(2 * RECORD_BYTES + 44);
+		for (int i = 1; i <= 5; i++) {
+			spill.append(sample(i));
+		}
+		assertEquals(3, segments().size());
+
+		List<Telemetry> replayed = spill.read(10);
+		assertEquals(5, replayed.size());
+		for (int i = 0; i < 5; i++) {
+			assertSample(i + 1, replayed.get(i));
+		}
+		spill.commit();
+
+		assertEquals(1, segments().size());
+		assertTrue(spill.isEmpty());
+	}
+
+	@Test
+	void keepsPayloadAndMissingFields() throws IOException {
+		SpillLog spill = open(4096);
+		Telemetry raw = new Telemetry();
+		raw.setDeviceId(7L);
+		raw.setTimestamp(TIME);
+		raw.setPayload("{\"unknown\": \"é\"}");
+		spill.append(raw);
+
+		Telemetry replayed = spill.read(1).get(0);
+
+		assertEquals("{\"unknown\": \"é\"}", replayed.getRawPayload());
+		assertNull(replayed.getRelayState());
+		assertNull(replayed.getPower());
+		assertNull(replayed.getDeviceTs());
+		assertNull(replayed.getBootEpoch());
+	}
+
+	private SpillLog open(int segmentBytes) throws IOException {
+		SpillLog spill = new SpillLog();
+		ReflectionTestUtils.setField(spill, "dir", dir.toString());
+		ReflectionTestUtils.setField(spill, "segmentBytes", segmentBytes);
+		spill.open();
+		return spill;
+	}
+
+	private List<Path> segments() throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.filter(p -> p.getFileName().toString().endsWith(".seg")).sorted().toList();
+		}
+	}
+
+	private static Telemetry sample(int i) {
+		Telemetry t = new Telemetry();
+		t.setDeviceId(4L);
+		t.setTimestamp(TIME.plusSeconds(i));
+		t.setRelayState(i % 2 == 0);
+		t.setPower(100 + i);
+		t.setDeviceTs(5000L * i);
+		t.setBootEpoch(1_766_541_600_000L);
+		return t;
+	}
+
+	private static void assertSample(int i, Telemetry actual) {
+		Telemetry expected = sample(i);
+		assertEquals(expected.getDeviceId(), actual.getDeviceId());
+		assertEquals(expected.getTimestamp(), actual.getTimestamp());
+		assertEquals(expected.getRelayState(), actual.getRelayState());
+		assertEquals(expected.getPower(), actual.getPower());
+		assertEquals(expected.getDeviceTs(), actual.getDeviceTs());
+		assertEquals(expected.getBootEpoch(), actual.getBootEpoch());
+		assertNull(actual.getRawPayload());
+	}
+}
@@ -0,0 +1,46 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TelemetryDeduplicatorTest {
+	private TelemetryDeduplicator deduplicator;
+
+	@BeforeEach
+	void setUp() {
+		deduplicator = new TelemetryDeduplicator();
+		ReflectionTestUtils.setField(deduplicator, "windowSize", 4);
+	}
+
+	@Test
+	void dropsRedeliveredTs() {
+		assertFalse(deduplicator.isDuplicate(4L, 5000));
+		assertFalse(deduplicator.isDuplicate(4L, 10000));
+
+		assertTrue(deduplicator.isDuplicate(4L, 5000));
+		assertTrue(deduplicator.isDuplicate(4L, 10000));
+		assertEquals(2, deduplicator.getDuplicates());
+	}
+
+	@Test
+	void devicesHaveSeparateWindows() {
+		assertFalse(deduplicator.isDuplicate(4L, 5000));
+		assertFalse(deduplicator.isDuplicate(5L, 5000));
+	}
+
+	@Test
+	void tsOutsideWindowIsAcceptedAgain() {
+		// ts là uptime: sau khi khởi động lại device gửi lại các giá trị cũ
+		for (long ts = 1000; ts <= 5000; ts += 1000) {
+			assertFalse(deduplicator.isDuplicate(4L, ts));
+		}
+
+		assertFalse(deduplicator.isDuplicate(4L, 1000));
+		assertTrue(deduplicator.isDuplicate(4L, 5000));
+	}
+}
@@ -0,0 +1,89 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TelemetryPayloadParserTest {
+	private final TelemetryPayloadParser parser = new TelemetryPayloadParser();
+
+	private boolean parse(String payload) {
+		return parser.parse(payload.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void parsesFirmwarePayload() {
+		assertTrue(parse("{\"stateRelay\": true, \"power\": \"153\", \"ts\": 86400123}"));
+
+		assertTrue(parser.relayState());
+		assertEquals(153, parser.power());
+		assertEquals(86400123L, parser.deviceTs());
+	}
+
+	@Test
+	void acceptsFieldsInAnyOrderAndNumericPower() {
+		assertTrue(parse("{\"ts\":42,\"power\":7,\"stateRelay\":false}"));
+
+		assertFalse(parser.relayState());
+		assertEquals(7, parser.power());
+		assertEquals(42L, parser.deviceTs());
+	}
+
+	@Test
+	void acceptsWhitespaceAroundTokens() {
+		assertTrue(parse("\n { \"stateRelay\" :\tfalse ,\r\n \"power\" : \"0\" , \"ts\" : 0 } \n"));
+
+		assertEquals(0, parser.power());
+		assertEquals(0L, parser.deviceTs());
+	}
+
+	@Test
+	void parsesSliceOfLargerBuffer() {
+		byte[] frame = "xx{\"stateRelay\":true,\"power\":\"5\",\"ts\":9}yy".getBytes(StandardCharsets.UTF_8);
+
+		assertTrue(parser.parse(frame, 2, frame.length - 4));
+		assertEquals(5, parser.power());
+		assertEquals(9L, parser.deviceTs());
+	}
+
+	@Test
+	void rejectsEscapedStrings() {
+		// firmware không bao giờ gửi escape -> để nguyên payload thô
+		assertFalse(parse("{\"state\\u0052elay\":true,\"power\":\"1\",\"ts\":1}"));
+		assertFalse(parse("{\"stateRelay\":true,\"power\":\"1\\\"0\",\"ts\":1}"));
+	}
+
+	@Test
+	void rejectsNegativeOrMissingTs() {
+		assertFalse(parse("{\"stateRelay\":true,\"power\":\"1\",\"ts\":-5}"));
+		assertFalse(parse("{\"stateRelay\":true,\"power\":\"1\"}"));
+		assertFalse(parse("{\"stateRelay\":true,\"power\":\"1\",\"ts\":\"5\"}"));
+	}
+
+	@Test
+	void rejectsMalformedInput() {
+		assertFalse(parse(""));
+		assertFalse(parse("not json"));
+		assertFalse(parse("{\"stateRelay\":true,\"power\":\"1\",\"ts\":1"));
+		assertFalse(parse("{\"stateRelay\":true,\"power\":\"1\",\"ts\":1}x"));
+		assertFalse(parse("{\"stateRelay\":true,\"power\":\"1\",\"ts\":1,}"));
+		assertFalse(parse("{\"stateRelay\":yes,\"power\":\"1\",\"ts\":1}"));
+		assertFalse(parse("{\"stateRelay\":true,\"power\":\"1\",\"ts\":1,\"extra\":1}"));
+		assertFalse(parse("{\"stateRelay\":true,\"power\":\"1\",\"power\":\"2\",\"ts\":1}"));
+		assertFalse(parse("{\"stateRelay\":true,\"power\":\"1,\"ts\":1}"));
+		// power quá 9 chữ số thì tràn int
+		assertFalse(parse("{\"stateRelay\":true,\"power\":\"1234567890\",\"ts\":1}"));
+	}
+
+	@Test
+	void resetsFieldsBetweenMessages() {
+		assertTrue(parse("{\"stateRelay\":true,\"power\":\"1\",\"ts\":1}"));
+
+		// message sau thiếu power không được dùng lại power của message trước
+		assertFalse(parse("{\"stateRelay\":true,\"ts\":2}"));
+	}
+}
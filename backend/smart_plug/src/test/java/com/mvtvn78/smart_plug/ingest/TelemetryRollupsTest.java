@@ -0,0 +1,146 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import com.mvtvn78.smart_plug.model.RollupResolution;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class TelemetryRollupsTest {
+	private static final LocalDateTime HOUR = LocalDateTime.of(2025, 12, 24, 10, 0);
+
+	private final StubJdbcTemplate jdbcTemplate = new StubJdbcTemplate();
+	private TelemetryRollups rollups;
+
+	@BeforeEach
+	void setUp() {
+		rollups = new TelemetryRollups(jdbcTemplate, mock(PlatformTransactionManager.class));
+		ReflectionTestUtils.setField(rollups, "maxGapMs", 60_000L);
+		ReflectionTestUtils.setField(rollups, "maxPending", 1000);
+	}
+
+	@Test
+	void aggregatesSamplesPerBucket() {
+		rollups.add(4L, false, 100, millis(HOUR.plusSeconds(5)));
+		rollups.add(4L, false, 300, millis(HOUR.plusSeconds(10)));
+		rollups.add(4L, false, 200, millis(HOUR.plusMinutes(1)));
+
+		rollups.flush();
+
+		Object[] minute = jdbcTemplate.row(4L, RollupResolution.MINUTE, HOUR);
+		assertEquals(2L, minute[3]);
+		assertEquals(100, minute[4]);
+		assertEquals(300, minute[5]);
+		assertEquals(400L, minute[6]);
+		Object[] hour = jdbcTemplate.row(4L, RollupResolution.HOUR, HOUR);
+		assertEquals(3L, hour[3]);
+		assertEquals(600L, hour[6]);
+		assertEquals(0L, hour[7]);
+	}
+
+	@Test
+	void splitsRelayOnGapAtBucketBoundaries() {
+		LocalDateTime before = HOUR.minusSeconds(10);
+		rollups.add(4L, true, 100, millis(before));
+		rollups.add(4L, true, 100, millis(HOUR.plusSeconds(20)));
+
+		rollups.flush();
+
+		// 10 giây thuộc phút/giờ trước, 20 giây thuộc phút/giờ sau, cả 30 giây thuộc ngày
+		assertEquals(10_000L, jdbcTemplate.row(4L, RollupResolution.MINUTE, before.withSecond(0))[7]);
+		assertEquals(20_000L, jdbcTemplate.row(4L, RollupResolution.MINUTE, HOUR)[7]);
+		assertEquals(10_000L, jdbcTemplate.row(4L, RollupResolution.HOUR, HOUR.minusHours(1))[7]);
+		assertEquals(20_000L, jdbcTemplate.row(4L, RollupResolution.HOUR, HOUR)[7]);
+		assertEquals(30_000L, jdbcTemplate.row(4L, RollupResolution.DAY, HOUR.toLocalDate().atStartOfDay())[7]);
+	}
+
+	@Test
+	void gapSpanningBucketWithoutSamplesHasNoMinMax() {
+		ReflectionTestUtils.setField(rollups, "maxGapMs", 180_000L);
+		rollups.add(4L, true, 100, millis(HOUR.plusSeconds(30)));
+		rollups.add(4L, true, 100, millis(HOUR.plusMinutes(2).plusSeconds(30)));
+
+		rollups.flush();
+
+		Object[] empty = jdbcTemplate.row(4L, RollupResolution.MINUTE, HOUR.plusMinutes(1));
+		assertEquals(0L, empty[3]);
+		assertNull(empty[4]);
+		assertNull(empty[5]);
+		assertEquals(60_000L, empty[7]);
+	}
+
+	@Test
+	void failedFlushMergesBackWithoutDoubleCounting() {
+		rollups.add(4L, false, 100, millis(HOUR));
+		jdbcTemplate.failing = true;
+		rollups.flush();
+		assertTrue(jdbcTemplate.rows.isEmpty());
+
+		rollups.add(4L, false, 300, millis(HOUR.plusSeconds(5)));
+		jdbcTemplate.failing = false;
+		rollups.flush();
+
+		Object[] minute = jdbcTemplate.row(4L, RollupResolution.MINUTE, HOUR);
+		assertEquals(2L, minute[3]);
+		assertEquals(400L, minute[6]);
+		assertEquals(3, jdbcTemplate.rows.size());
+		assertEquals(0, rollups.getPendingBuckets());
+	}
+
+	@Test
+	void capsPendingWhileDatabaseIsDown() {
+		ReflectionTestUtils.setField(rollups, "maxPending", 5);
+		jdbcTemplate.failing = true;
+		for (long deviceId = 1; deviceId <= 4; deviceId++) {
+			rollups.add(deviceId, false, 100, millis(HOUR));
+		}
+
+		// 12 bucket (4 device x 3 độ phân giải), chỉ giữ lại 5
+		rollups.flush();
+
+		assertEquals(5, rollups.getPendingBuckets());
+		assertEquals(7, rollups.getDropped());
+	}
+
+	private static long millis(LocalDateTime time) {
+		return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	}
+
+	/**
+	 * Ghi lại các dòng upsert thay vì ghi database, lỗi khi failing = true
+	 */
+	private static class StubJdbcTemplate extends JdbcTemplate {
+		final List<Object[]> rows = new ArrayList<>();
+		boolean failing;
+
+		@Override
+		public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+			if (failing) {
+				throw new DataAccessResourceFailureException("database down");
+			}
+			rows.addAll(batchArgs);
+			return new int[batchArgs.size()];
+		}
+
+		Object[] row(long deviceId, RollupResolution resolution, LocalDateTime bucket) {
+			return rows.stream()
+					.filter(r -> r[0].equals(deviceId) && r[1].equals(resolution.name())
+							&& r[2].equals(Timestamp.valueOf(bucket)))
+					.findFirst()
+					.orElseThrow(() -> new AssertionError("không có bucket " + resolution + " " + bucket));
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import com.mvtvn78.smart_plug.model.Telemetry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class TelemetryWriterTest {
+	private static final LocalDateTime TIME = LocalDateTime.of(2025, 12, 24, 10, 0);
+
+	@TempDir
+	Path dir;
+
+	private final StubJdbcTemplate jdbcTemplate = new StubJdbcTemplate();
+	private SpillLog spillLog;
+	private TelemetryWriter writer;
+
+	@AfterEach
+	void tearDown() throws Exception {
+		if (writer != null) {
+			writer.stop();
+		}
+		if (spillLog != null) {
+			spillLog.close();
+		}
+	}
+
+	@Test
+	void flushesWhenBatchIsFull() throws Exception {
+		// flush-interval dài: lô chỉ được ghi vì đủ batch-size
+		start(3, 60_000, 100);
+		for (int i = 1; i <= 6; i++) {
+			writer.write(sample(i));
+		}
+
+		assertEquals(List.of(1, 2, 3), ids(jdbcTemplate.next()));
+		assertEquals(List.of(4, 5, 6), ids(jdbcTemplate.next()));
+		// bộ đếm tăng sau khi batchUpdate trả về
+		assertTrue(waitFor(() -> writer.getFlushCount() == 2));
+	}
+
+	@Test
+	void flushesPartialBatchAfterInterval() throws Exception {
+		start(100, 50, 100);
+		writer.write(sample(1));
+		writer.write(sample(2));
+
+		assertEquals(List.of(1, 2), ids(jdbcTemplate.next()));
+	}
+
+	@Test
+	void failedFlushSpillsAndLaterWritesBypassQueue() throws Exception {
+		jdbcTemplate.failing = true;
+		start(2, 60_000, 100);
+		writer.write(sample(1));
+		writer.write(sample(2));
+
+		assertTrue(waitFor(() -> writer.getSpilledRows() == 2));
+		assertTrue(writer.isDegraded());
+
+		// đang degraded: ghi thẳng ra spill log, không qua hàng đợi
+		writer.write(sample(3));
+		assertEquals(3, writer.getSpilledRows());
+		assertEquals(0, writer.getQueueDepth());
+
+		List<Telemetry> spilled = spillLog.read(10);
+		assertEquals(List.of(1, 2, 3), ids(spilled));
+
+		// replay thành công đưa writer về chế độ bình thường
+		jdbcTemplate.failing = false;
+		writer.insert(spilled);
+		assertFalse(writer.isDegraded());
+	}
+
+	@Test
+	void stopWritesBatchHeldByWorker() throws Exception {
+		start(100, 60_000, 100);
+		writer.write(sample(1));
+		writer.write(sample(2));
+		writer.write(sample(3));
+		// worker đã lấy hết khỏi hàng đợi và đang chờ đủ lô
+		assertTrue(waitFor(() -> writer.getQueueDepth() == 0));
+		assertNull(jdbcTemplate.batches.poll());
+
+		writer.stop();
+		writer = null;
+
+		assertEquals(List.of(1, 2, 3), ids(jdbcTemplate.next()));
+		assertNull(jdbcTemplate.batches.poll());
+	}
+
+	private void start(int batchSize, long flushIntervalMs, int queueCapacity) throws IOException {
+		spillLog = new SpillLog();
+		ReflectionTestUtils.setField(spillLog, "dir", dir.toString());
+		ReflectionTestUtils.setField(spillLog, "segmentBytes", 4096);
+		spillLog.open();
+		writer = new TelemetryWriter(jdbcTemplate, mock(PlatformTransactionManager.class), spillLog,
+				new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(writer, "batchSize", batchSize);
+		ReflectionTestUtils.setField(writer, "flushIntervalMs", flushIntervalMs);
+		ReflectionTestUtils.setField(writer, "queueCapacity", queueCapacity);
+		writer.start();
+	}
+
+	private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 2000;
+		while (!condition.getAsBoolean()) {
+			if (System.currentTimeMillis() > deadline) {
+				return false;
+			}
+			Thread.sleep(5);
+		}
+		return true;
+	}
+
+	private static List<Integer> ids(List<Telemetry> rows) {
+		return rows.stream().map(t -> (int) (t.getPower() - 100)).toList();
+	}
+
+	private static Telemetry sample(int i) {
+		Telemetry t = new Telemetry();
+		t.setDeviceId(4L);
+		t.setTimestamp(TIME.plusSeconds(i));
+		t.setRelayState(true);
+		t.setPower(100 + i);
+		t.setDeviceTs(5000L * i);
+		return t;
+	}
+
+	/**
+	 * Ghi lại từng lô thay vì ghi database, lỗi khi failing = true
+	 */
+	private static class StubJdbcTemplate extends JdbcTemplate {
+		final BlockingQueue<List<Telemetry>> batches = new LinkedBlockingQueue<>();
+		volatile boolean failing;
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+									   ParameterizedPreparedStatementSetter<T> pss) {
+			if (failing) {
+				throw new DataAccessResourceFailureException("database down");
+			}
+			batches.add(new ArrayList<>((Collection<Telemetry>) batchArgs));
+			return new int[0][];
+		}
+
+		List<Telemetry> next() throws InterruptedException {
+			List<Telemetry> batch = batches.poll(2, TimeUnit.SECONDS);
+			assertTrue(batch != null, "không có lô nào được ghi");
+			return batch;
+		}
+	}
+}
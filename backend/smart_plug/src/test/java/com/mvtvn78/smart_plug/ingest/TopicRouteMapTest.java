@@ -0,0 +1,36 @@
+package com.mvtvn78.smart_plug.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TopicRouteMapTest {
+	private final TopicRouteMap routes = new TopicRouteMap();
+
+	@Test
+	void missingTopicReturnsMissing() {
+		assertEquals(TopicRouteMap.MISSING, routes.get("plug/unknown/data"));
+	}
+
+	@Test
+	void putOverwritesExistingTopic() {
+		routes.put("plug/1/data", 1L);
+		routes.put("plug/1/data", 7L);
+
+		assertEquals(7L, routes.get("plug/1/data"));
+		assertEquals(1, routes.size());
+	}
+
+	@Test
+	void keepsEveryRouteAcrossResize() {
+		// đủ nhiều để bảng 1024 ô phải nới vài lần
+		for (long id = 1; id <= 5000; id++) {
+			routes.put("plug/" + id + "/data", id);
+		}
+
+		assertEquals(5000, routes.size());
+		for (long id = 1; id <= 5000; id++) {
+			assertEquals(id, routes.get("plug/" + id + "/data"));
+		}
+	}
+}
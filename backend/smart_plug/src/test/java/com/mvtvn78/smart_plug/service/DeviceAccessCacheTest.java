@@ -0,0 +1,43 @@
+package com.mvtvn78.smart_plug.service;
+
+import com.mvtvn78.smart_plug.repository.UserDeviceRepository;
+import com.mvtvn78.smart_plug.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class DeviceAccessCacheTest {
+	private final DeviceAccessCache cache = new DeviceAccessCache();
+
+	@BeforeEach
+	void setUp() {
+		// user không tồn tại -> danh sách rỗng, vẫn được cache
+		ReflectionTestUtils.setField(cache, "userRepository", mock(UserRepository.class));
+		ReflectionTestUtils.setField(cache, "userDeviceRepository", mock(UserDeviceRepository.class));
+		ReflectionTestUtils.setField(cache, "ttlMs", 60_000L);
+		ReflectionTestUtils.setField(cache, "maxSize", 3);
+	}
+
+	@Test
+	void staysWithinMaxSize() {
+		for (int i = 0; i < 10; i++) {
+			cache.deviceIdsOf("user" + i);
+			assertTrue(cache.size() <= 3, "size " + cache.size());
+		}
+	}
+
+	@Test
+	void purgeDropsExpiredEntries() {
+		cache.deviceIdsOf("fresh");
+		ReflectionTestUtils.setField(cache, "ttlMs", -1L);
+		cache.deviceIdsOf("expired");
+
+		cache.purgeExpired();
+
+		assertEquals(1, cache.size());
+	}
+}
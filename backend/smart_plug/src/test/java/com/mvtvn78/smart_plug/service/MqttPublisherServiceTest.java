@@ -0,0 +1,102 @@
+package com.mvtvn78.smart_plug.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.integration.mqtt.core.MqttPahoClientFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MqttPublisherServiceTest {
+	private final IMqttAsyncClient client = mock(IMqttAsyncClient.class);
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private MqttPublisherService publisher;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		MqttPahoClientFactory factory = mock(MqttPahoClientFactory.class);
+		MqttConnectOptions options = new MqttConnectOptions();
+		options.setServerURIs(new String[]{"tcp://localhost:1883"});
+		when(factory.getConnectionOptions()).thenReturn(options);
+		when(factory.getAsyncClientInstance(anyString(), anyString())).thenReturn(client);
+		when(client.getClientId()).thenReturn("test_out_0");
+
+		publisher = new MqttPublisherService(factory, registry);
+		ReflectionTestUtils.setField(publisher, "connections", 1);
+		ReflectionTestUtils.setField(publisher, "maxInflight", 2);
+		ReflectionTestUtils.setField(publisher, "qos", 1);
+		ReflectionTestUtils.setField(publisher, "acquireTimeoutMs", 10L);
+		ReflectionTestUtils.setField(publisher, "connectRetryMs", 10L);
+	}
+
+	@AfterEach
+	void tearDown() {
+		when(client.isConnected()).thenReturn(false);
+		publisher.stop();
+	}
+
+	@Test
+	void connectsInBackgroundAndRetriesInitialFailure() throws Exception {
+		// broker chưa sẵn sàng: lần kết nối đầu thất bại
+		doAnswer(invocation -> {
+			invocation.<IMqttActionListener>getArgument(2).onFailure(null, new MqttException(MqttException.REASON_CODE_SERVER_CONNECT_ERROR));
+			return null;
+		}).when(client).connect(any(MqttConnectOptions.class), isNull(), any(IMqttActionListener.class));
+
+		publisher.start();
+
+		verify(client, timeout(2000).atLeast(2)).connect(any(MqttConnectOptions.class), isNull(), any(IMqttActionListener.class));
+	}
+
+	@Test
+	void publishFailsFastWhenNotConnected() throws Exception {
+		publisher.start();
+		when(client.isConnected()).thenReturn(false);
+
+		CompletableFuture<Void> future = publisher.publish("/relay/plug1", "{}");
+
+		assertTrue(future.isCompletedExceptionally());
+		verify(client, never()).publish(anyString(), any(), any(), any());
+		assertEquals(0, publisher.getInFlight());
+		assertEquals(1, publisher.getFailed());
+	}
+
+	@Test
+	void publishCompletesOnAckAndReleasesWindow() throws Exception {
+		publisher.start();
+		when(client.isConnected()).thenReturn(true);
+
+		CompletableFuture<Void> future = publisher.publish("/relay/plug1", "{}");
+		ArgumentCaptor<IMqttActionListener> listener = ArgumentCaptor.forClass(IMqttActionListener.class);
+		verify(client).publish(eq("/relay/plug1"), any(), isNull(), listener.capture());
+		assertFalse(future.isDone());
+		assertEquals(1, publisher.getInFlight());
+
+		listener.getValue().onSuccess(null);
+
+		assertTrue(future.isDone() && !future.isCompletedExceptionally());
+		assertEquals(0, publisher.getInFlight());
+		assertEquals(1, registry.get("mqtt.publish.ack").timer().count());
+	}
+}
@@ -0,0 +1,151 @@
+package com.mvtvn78.smart_plug.ws;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SessionManagerTest {
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final SessionManager manager = new SessionManager(registry);
+	/**
+	 * Giữ các lần gửi của session "treo" cho tới cuối test
+	 */
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@AfterEach
+	void tearDown() {
+		release.countDown();
+		manager.stop();
+	}
+
+	@Test
+	void evictsWhenBufferExceedsLimit() throws Exception {
+		ReflectionTestUtils.setField(manager, "bufferSizeLimit", 10L);
+		CountDownLatch started = new CountDownLatch(1);
+		WebSocketSession session = stalledSession("s1", "1", started);
+		manager.addSession(session);
+
+		manager.sendToDevice("1", TelemetryFrame.raw("12345678"));
+		assertTrue(started.await(2, TimeUnit.SECONDS));
+		// message đầu còn đang gửi nên vẫn tính vào buffer: 8 + 8 > 10
+		manager.sendToDevice("1", TelemetryFrame.raw("12345678"));
+
+		assertFalse(manager.hasSessions("1"));
+		assertEquals(1.0, evicted("buffer"));
+		verify(session, timeout(2000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+	}
+
+	@Test
+	void evictsWhenSendTakesTooLong() throws Exception {
+		ReflectionTestUtils.setField(manager, "bufferSizeLimit", 1024L);
+		ReflectionTestUtils.setField(manager, "sendTimeLimitMs", 50L);
+		CountDownLatch started = new CountDownLatch(1);
+		WebSocketSession session = stalledSession("s1", "1", started);
+		manager.addSession(session);
+
+		manager.sendToDevice("1", TelemetryFrame.raw("hello"));
+		assertTrue(started.await(2, TimeUnit.SECONDS));
+		manager.checkSendTime();
+		assertTrue(manager.hasSessions("1"), "chưa quá thời gian thì chưa loại");
+
+		Thread.sleep(100);
+		manager.checkSendTime();
+
+		assertFalse(manager.hasSessions("1"));
+		assertEquals(1.0, evicted("time"));
+		verify(session, timeout(2000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+	}
+
+	@Test
+	void stalledSessionsDoNotDelayOthers() throws Exception {
+		ReflectionTestUtils.setField(manager, "bufferSizeLimit", 1024L);
+		// nhiều session treo hơn số CPU: pool cố định cũ sẽ hết luồng
+		int stalled = Runtime.getRuntime().availableProcessors() + 2;
+		CountDownLatch started = new CountDownLatch(stalled);
+		for (int i = 0; i < stalled; i++) {
+			manager.addSession(stalledSession("stalled" + i, "stalled" + i, started));
+			manager.sendToDevice("stalled" + i, TelemetryFrame.raw("hello"));
+		}
+		assertTrue(started.await(2, TimeUnit.SECONDS));
+
+		WebSocketSession fast = session("fast", "fast");
+		manager.addSession(fast);
+		for (int i = 0; i < 100; i++) {
+			manager.sendToDevice("fast", TelemetryFrame.raw("message " + i));
+		}
+
+		verify(fast, timeout(2000).times(100)).sendMessage(any());
+		verify(fast, never()).close(any());
+		assertEquals(0.0, evicted("buffer") + evicted("time") + evicted("error"));
+	}
+
+	@Test
+	void disconnectDuringSendIsNotEviction() throws Exception {
+		ReflectionTestUtils.setField(manager, "bufferSizeLimit", 1024L);
+		CountDownLatch started = new CountDownLatch(1);
+		WebSocketSession session = session("s1", "1");
+		// client đóng kết nối khi đang gửi: lần gửi đó kết thúc bằng lỗi
+		doAnswer(invocation -> {
+			started.countDown();
+			release.await();
+			throw new IOException("connection closed");
+		}).when(session).sendMessage(any());
+		manager.addSession(session);
+
+		manager.sendToDevice("1", TelemetryFrame.raw("hello"));
+		assertTrue(started.await(2, TimeUnit.SECONDS));
+		manager.sendToDevice("1", TelemetryFrame.raw("queued"));
+		manager.removeSession(session);
+		release.countDown();
+
+		verify(session, after(200).never()).close(any());
+		verify(session).sendMessage(any());
+		assertFalse(manager.hasSessions("1"));
+		assertEquals(0.0, evicted("buffer") + evicted("time") + evicted("error"));
+	}
+
+	private WebSocketSession stalledSession(String id, String deviceId, CountDownLatch started) throws Exception {
+		WebSocketSession session = session(id, deviceId);
+		doAnswer(invocation -> {
+			started.countDown();
+			release.await();
+			return null;
+		}).when(session).sendMessage(any());
+		return session;
+	}
+
+	private static WebSocketSession session(String id, String deviceId) {
+		WebSocketSession session = mock(WebSocketSession.class);
+		Map<String, Object> attributes = new HashMap<>();
+		attributes.put("deviceId", deviceId);
+		when(session.getId()).thenReturn(id);
+		when(session.getAttributes()).thenReturn(attributes);
+		when(session.isOpen()).thenReturn(true);
+		return session;
+	}
+
+	private double evicted(String reason) {
+		return registry.get("ws.sessions.evicted").tag("reason", reason).counter().count();
+	}
+}
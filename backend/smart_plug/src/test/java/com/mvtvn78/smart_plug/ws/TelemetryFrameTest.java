@@ -0,0 +1,56 @@
+package com.mvtvn78.smart_plug.ws;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class TelemetryFrameTest {
+	private final TelemetryFrame frame = new TelemetryFrame(4L, true, 130, 133_055L, 1_766_545_224_888L);
+
+	@Test
+	void binaryLayout() {
+		ByteBuffer payload = ((BinaryMessage) frame.encode(WsFormat.BINARY)).getPayload().duplicate();
+
+		assertEquals(TelemetryFrame.BINARY_SIZE, payload.remaining());
+		assertEquals(4L, payload.getLong(0));
+		assertEquals(1_766_545_224_888L, payload.getLong(8));
+		assertEquals(133_055L, payload.getLong(16));
+		assertEquals(130, payload.getInt(24));
+		assertEquals(1, payload.get(28));
+	}
+
+	@Test
+	void binaryRelayOff() {
+		TelemetryFrame off = new TelemetryFrame(4L, false, 0, 1L, 2L);
+
+		assertEquals(0, ((BinaryMessage) off.encode(WsFormat.BINARY)).getPayload().get(28));
+	}
+
+	@Test
+	void textJson() {
+		TextMessage text = (TextMessage) frame.encode(WsFormat.TEXT);
+
+		assertEquals("{\"deviceId\":4,\"stateRelay\":true,\"power\":\"130\",\"ts\":133055,\"receivedAt\":1766545224888}",
+				text.getPayload());
+	}
+
+	@Test
+	void encodedOncePerFormat() {
+		assertSame(frame.encode(WsFormat.TEXT), frame.encode(WsFormat.TEXT));
+		assertSame(frame.encode(WsFormat.BINARY), frame.encode(WsFormat.BINARY));
+	}
+
+	@Test
+	void rawFrameIsTextOnly() {
+		TelemetryFrame raw = TelemetryFrame.raw("{\"bad\":1}");
+
+		assertNull(raw.encode(WsFormat.BINARY));
+		assertEquals("{\"bad\":1}", ((TextMessage) raw.encode(WsFormat.TEXT)).getPayload());
+	}
+}
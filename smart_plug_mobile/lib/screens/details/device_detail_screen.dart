@@ -117,7 +117,7 @@ class _DeviceDetailScreenState extends State<DeviceDetailScreen>
       final data = await _deviceApi.getTelemetry(widget.deviceId);
       if (!mounted) return;
       setState(() {
-        _historyList = data.reversed.toList();
+        _historyList = data;
       });
     } catch (e) {
       debugPrint("Lỗi telemetry: $e");
@@ -41,8 +41,9 @@ class DeviceApi {
 
   Future<List<dynamic>> getTelemetry(int deviceId) async {
     try {
-      final response = await _dio.get('/telemetry/$deviceId');
-      // API trả về List
+      final response = await _dio.get('/telemetry/$deviceId',
+          queryParameters: {'order': 'desc'});
+      // API trả về List, mới nhất trước
       return response.data as List<dynamic>;
     } catch (e) {
       throw Exception("Lỗi lấy lịch sử: $e");